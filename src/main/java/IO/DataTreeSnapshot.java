@@ -0,0 +1,252 @@
+package IO;
+
+import SuffixTrees.FlatSuffixTree;
+import Utils.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file that holds a built data tree, so that repeated runs on the same input file do not parse it and build the tree
+ * again.
+ *
+ * The snapshot holds the input file it was built from (path, size and modification time) and whether it was built
+ * with non_directons, the dataset fields of Utils (the alphabet, the genome and replicon names and the counts used for
+ * scoring) and the FlatSuffixTree itself, including its cached counts and its occurrences.
+ * It is read through a memory mapped FileChannel, the arrays of the tree are not copied to the heap but read by the tree
+ * from the mapped buffer, which stays valid after the channel is closed. A snapshot is at most 2GB, the size of one
+ * mapped buffer.
+ */
+public class DataTreeSnapshot {
+    private static final int MAGIC = 0x43534254;
+    private static final int VERSION = 3;
+
+    /**
+     * Writes a snapshot of the data tree. The snapshot is written to a temporary file that replaces snapshot_path when
+     * it is complete, so a failed write does not leave a broken snapshot behind.
+     *
+     * @param snapshot_path
+     * @param input_file the input file the data tree was built from
+     * @param non_directons
+     * @param data_tree
+     * @param utils holds the dataset fields that were filled when the input file was read
+     * @return true if the snapshot was written
+     */
+    public static boolean write(String snapshot_path, File input_file, boolean non_directons,
+                                FlatSuffixTree data_tree, Utils utils){
+        File snapshot_file = new File(snapshot_path);
+        File temp_file = new File(snapshot_path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp_file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, input_file.getCanonicalPath());
+            out.writeLong(input_file.length());
+            out.writeLong(input_file.lastModified());
+            out.writeBoolean(non_directons);
+
+            writeDataset(out, utils);
+            data_tree.write(out);
+        } catch (IOException e) {
+            System.out.println("Could not write snapshot " + snapshot_path + ": " + e.getMessage());
+            temp_file.delete();
+            return false;
+        }
+
+        try {
+            Files.move(temp_file.toPath(), snapshot_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Could not write snapshot " + snapshot_path + ": " + e.getMessage());
+            temp_file.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a snapshot, if it was built from input_file with the same non_directons.
+     * Fills the dataset fields of utils.
+     *
+     * @param snapshot_path
+     * @param input_file
+     * @param non_directons
+     * @param utils
+     * @return the data tree, null if the snapshot does not exist, does not match the input file or cannot be read
+     */
+    public static FlatSuffixTree read(String snapshot_path, File input_file, boolean non_directons, Utils utils){
+        File snapshot_file = new File(snapshot_path);
+        if (!snapshot_file.exists()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot_file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                System.out.println("Snapshot " + snapshot_path + " is too large to be mapped");
+                return null;
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                System.out.println("Snapshot " + snapshot_path + " was not written by this version of CSBFinder");
+                return null;
+            }
+            String input_path = readString(in);
+            long input_length = in.getLong();
+            long input_last_modified = in.getLong();
+            boolean snapshot_non_directons = in.get() != 0;
+            if (!input_path.equals(input_file.getCanonicalPath()) || input_length != input_file.length()
+                    || input_last_modified != input_file.lastModified() || snapshot_non_directons != non_directons) {
+                System.out.println("Snapshot " + snapshot_path + " was built from a different input");
+                return null;
+            }
+
+            //utils is filled only when the whole snapshot was read
+            Utils dataset = new Utils(utils.cog_info, null);
+            readDataset(in, dataset);
+            FlatSuffixTree data_tree = new FlatSuffixTree(in);
+            copyDataset(dataset, utils);
+            return data_tree;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not read snapshot " + snapshot_path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeDataset(DataOutputStream out, Utils utils) throws IOException {
+        out.writeInt(utils.number_of_genomes);
+        out.writeInt(utils.dataset_length_sum);
+        out.writeInt(utils.max_genome_size);
+
+        out.writeInt(utils.index_to_char.size());
+        for (String ch : utils.index_to_char) {
+            writeString(out, ch);
+        }
+
+        writeNames(out, utils.genome_key_to_name);
+        writeNames(out, utils.replicon_key_to_name);
+
+        out.writeInt(utils.cog_to_containing_genomes.size());
+        for (Map.Entry<String, Set<Integer>> entry : utils.cog_to_containing_genomes.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (int genome : entry.getValue()) {
+                out.writeInt(genome);
+            }
+        }
+
+        out.writeInt(utils.genome_to_cog_paralog_count.size());
+        for (Map.Entry<Integer, Map<String, Integer>> entry : utils.genome_to_cog_paralog_count.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Map.Entry<String, Integer> paralog_count : entry.getValue().entrySet()) {
+                writeString(out, paralog_count.getKey());
+                out.writeInt(paralog_count.getValue());
+            }
+        }
+    }
+
+    private static void readDataset(ByteBuffer in, Utils utils){
+        utils.number_of_genomes = in.getInt();
+        utils.dataset_length_sum = in.getInt();
+        utils.max_genome_size = in.getInt();
+
+        //chars that are mapped by the Utils constructor keep their index
+        utils.index_to_char.clear();
+        int alphabet_size = in.getInt();
+        for (int i = 0; i < alphabet_size; i++) {
+            String ch = readString(in);
+            utils.index_to_char.add(ch);
+            if (!utils.char_to_index.containsKey(ch)) {
+                utils.char_to_index.put(ch, i);
+            }
+        }
+
+        readNames(in, utils.genome_key_to_name);
+        for (Map.Entry<Integer, String> entry : utils.genome_key_to_name.entrySet()) {
+            utils.genome_name_to_key.put(entry.getValue(), entry.getKey());
+        }
+        readNames(in, utils.replicon_key_to_name);
+
+        int cogs = in.getInt();
+        for (int i = 0; i < cogs; i++) {
+            String cog = readString(in);
+            int genomes_count = in.getInt();
+            Set<Integer> genomes = new HashSet<>();
+            for (int j = 0; j < genomes_count; j++) {
+                genomes.add(in.getInt());
+            }
+            utils.cog_to_containing_genomes.put(cog, genomes);
+        }
+
+        int genomes = in.getInt();
+        for (int i = 0; i < genomes; i++) {
+            int genome = in.getInt();
+            int cogs_count = in.getInt();
+            Map<String, Integer> paralog_counts = new HashMap<>();
+            for (int j = 0; j < cogs_count; j++) {
+                String cog = readString(in);
+                paralog_counts.put(cog, in.getInt());
+            }
+            utils.genome_to_cog_paralog_count.put(genome, paralog_counts);
+        }
+    }
+
+    private static void copyDataset(Utils from, Utils to){
+        to.number_of_genomes = from.number_of_genomes;
+        to.dataset_length_sum = from.dataset_length_sum;
+        to.max_genome_size = from.max_genome_size;
+
+        to.index_to_char.clear();
+        to.index_to_char.addAll(from.index_to_char);
+        to.char_to_index.putAll(from.char_to_index);
+
+        to.genome_key_to_name.putAll(from.genome_key_to_name);
+        to.genome_name_to_key.putAll(from.genome_name_to_key);
+        to.replicon_key_to_name.putAll(from.replicon_key_to_name);
+        to.cog_to_containing_genomes.putAll(from.cog_to_containing_genomes);
+        to.genome_to_cog_paralog_count.putAll(from.genome_to_cog_paralog_count);
+
+        to.initPatternScore();
+    }
+
+    private static void writeNames(DataOutputStream out, Map<Integer, String> names) throws IOException {
+        out.writeInt(names.size());
+        for (Map.Entry<Integer, String> entry : names.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static void readNames(ByteBuffer in, Map<Integer, String> names){
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            int key = in.getInt();
+            names.put(key, readString(in));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in){
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
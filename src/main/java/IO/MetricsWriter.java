@@ -0,0 +1,98 @@
+package IO;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Writes the metrics of a run to a file periodically, one JSON object per line
+ */
+public class MetricsWriter {
+    private final PrintWriter out;
+    private final Supplier<Map<String, Object>> metrics;
+    private final ScheduledExecutorService scheduler;
+
+    private MetricsWriter(PrintWriter out, Supplier<Map<String, Object>> metrics, int interval_seconds){
+        this.out = out;
+        this.metrics = metrics;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CSB metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::writeLine, interval_seconds, interval_seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts writing metrics
+     * @param path the file is created, or replaced if it exists
+     * @param metrics returns the values of the metrics, by their names
+     * @param interval_seconds
+     * @return the writer, null if the file could not be created
+     */
+    public static MetricsWriter start(String path, Supplier<Map<String, Object>> metrics, int interval_seconds){
+        try {
+            return new MetricsWriter(new PrintWriter(new FileWriter(path)), metrics, interval_seconds);
+        } catch (IOException e) {
+            System.out.println("Could not create metrics file " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stops writing, after writing the metrics once more
+     */
+    public void close(){
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLine();
+        out.close();
+    }
+
+    private synchronized void writeLine(){
+        StringBuilder line = new StringBuilder();
+        appendJson(line, metrics.get());
+        out.println(line);
+        out.flush();
+    }
+
+    private static void appendJson(StringBuilder json, Object value){
+        if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendJson(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                appendJson(json, entry.getValue());
+            }
+            json.append('}');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            json.append('"');
+            for (char ch : String.valueOf(value).toCharArray()) {
+                if (ch == '"' || ch == '\\') {
+                    json.append('\\').append(ch);
+                } else if (ch < 0x20) {
+                    json.append(String.format("\\u%04x", (int) ch));
+                } else {
+                    json.append(ch);
+                }
+            }
+            json.append('"');
+        }
+    }
+}
@@ -216,13 +216,14 @@ public class Writer {
 
             instances_file.println(">" + pattern.getPatternId() + "\t" + pattern.getPattern());
 
-            for (Map.Entry<Integer, List<InstanceLocation>> entry : groupSameSeqInstances(pattern).entrySet()) {
+            InstanceLocations instances_locations = new InstanceLocations(pattern);
+            for (int seq_key : instances_locations.getGenomes()) {
 
-                String seq_name = utils.genome_key_to_name.get(entry.getKey());
+                String seq_name = utils.genome_key_to_name.get(seq_key);
                 instances_file.print(seq_name);
 
-                List<InstanceLocation> instances_locations = entry.getValue();
-                for (InstanceLocation instance_location : instances_locations){
+                InstanceLocations.Cursor instance_location = instances_locations.getLocations(seq_key);
+                while (instance_location.next()){
                     String replicon_name = utils.replicon_key_to_name.get(instance_location.getRepliconId());
 
                     instances_file.print("\t" + replicon_name + "|[" + instance_location.getStartIndex() + ","
@@ -235,33 +236,6 @@ public class Writer {
         }
     }
 
-    /**
-     * Group all instances of pattern that are located in the same sequence
-     * @param pattern
-     * @return
-     */
-    private Map<Integer, List<InstanceLocation>> groupSameSeqInstances(Pattern pattern){
-        Map<Integer, List<InstanceLocation>> instance_seq_to_location = new HashMap<>();
-        for (Instance instance : pattern.get_instances()) {
-
-            int instance_length = instance.getLength();
-            for (Map.Entry<Integer, List<InstanceLocation>> entry : instance.getInstanceLocations().entrySet()) {
-                int seq_key = entry.getKey();
-
-                if (!instance_seq_to_location.containsKey(seq_key)) {
-                    instance_seq_to_location.put(seq_key, new ArrayList<InstanceLocation>());
-                }
-                List<InstanceLocation> instances_locations = instance_seq_to_location.get(seq_key);
-                for (InstanceLocation instance_location : entry.getValue()) {
-                    instance_location.setEndIndex(instance_length);
-                    instances_locations.add(instance_location);
-                }
-            }
-        }
-        return instance_seq_to_location;
-    }
-
-
     /**
      * Prints a pattern with the highest score in its family to a different sheet
      * @param pattern
@@ -43,6 +43,10 @@ public class CSBFinderController {
         this.model.findCSBs(request);
     }
 
+    public void cancelFindCSBs() {
+        this.model.cancelFindCSBs();
+    }
+
     public Map<String, String> getCogInfo(List<String> cogs) {
         return model.getCogInfo(cogs);
     }
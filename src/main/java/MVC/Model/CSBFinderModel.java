@@ -12,8 +12,7 @@ import Utils.Utils;
 import Utils.Gene;
 import Utils.COG;
 import Utils.Pattern;
-import Utils.Instance;
-import Utils.InstanceLocation;
+import Utils.InstanceLocations;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 
@@ -28,10 +27,14 @@ public class CSBFinderModel {
     private CommandLineArgs cla;
     private Utils utils;
     private Writer writer;
-    private GeneralizedSuffixTree dataset_suffix_tree;
+    private FlatSuffixTree dataset_suffix_tree;
     private List<Family> families;
 
     private int number_of_genomes;
+    /**
+     * Stops the running enumeration, see cancelFindCSBs
+     */
+    private volatile EnumerationCancellation cancellation;
 
     public CSBFinderModel() {
 
@@ -44,9 +47,10 @@ public class CSBFinderModel {
 
     public void loadFile(String path, boolean is_directons) {
         this.init();
-        dataset_suffix_tree = new GeneralizedSuffixTree();
+        GeneralizedSuffixTree gst = new GeneralizedSuffixTree();
         number_of_genomes = utils.readAndBuildDatasetTree(path,
-                dataset_suffix_tree, cla.non_directons);
+                gst, cla.non_directons);
+        dataset_suffix_tree = new FlatSuffixTree(gst);
 //        number_of_genomes= utils.getGenomeToGeneListMap().size();
 //        genomesLoadedListener.genomesLoadDone(new GenomesLoadEvent(utils.getGenomeToGeneListMap()));
 
@@ -86,11 +90,22 @@ public class CSBFinderModel {
 
         System.out.println("Extracting CSBs from " + number_of_genomes + " input sequences.");
 
+        cancellation = cla.timeout > 0 ? new EnumerationCancellation(cla.timeout) : new EnumerationCancellation();
         CSBFinder csbFinder = new CSBFinder(cla.max_error, cla.max_wildcards, cla.max_deletion, cla.max_insertion,
                 cla.quorum1, cla.quorum2,
                 cla.min_pattern_length, cla.max_pattern_length, utils.GAP_CHAR_INDEX, utils.WC_CHAR_INDEX,
                 dataset_suffix_tree, pattern_tree, cla.mult_count, utils, cla.memory_saving_mode, writer,
-                cla.non_directons, cla.debug);
+                cla.non_directons, cla.num_of_threads, cla.top, null, null, null, cancellation, cla.debug);
+
+        BitSet unexplored_chars = csbFinder.getUnexploredChars();
+        if (!unexplored_chars.isEmpty()) {
+            List<String> unexplored = new ArrayList<>();
+            for (int ch = unexplored_chars.nextSetBit(0); ch >= 0; ch = unexplored_chars.nextSetBit(ch + 1)) {
+                unexplored.add(utils.index_to_char.get(ch));
+            }
+            System.out.println("The enumeration was stopped, CSBs that start with " + String.join(", ", unexplored)
+                    + " were not all found");
+        }
 
         if (cla.input_patterns_file_name == null) {
             csbFinder.removeRedundantPatterns();
@@ -118,6 +133,16 @@ public class CSBFinderModel {
         csbFinderDoneListener.CSBFinderDoneOccurred(new CSBFinderDoneEvent(families));
     }
 
+    /**
+     * Stops the running findCSBs, which continues with the CSBs that were found so far. May be called from any thread
+     */
+    public void cancelFindCSBs() {
+        EnumerationCancellation cancellation = this.cancellation;
+        if (cancellation != null) {
+            cancellation.cancel();
+        }
+    }
+
     private Writer createWriter(boolean cog_info_exists){
         String parameters = "_ins" + cla.max_insertion + "_q" + cla.quorum2;
         String catalog_file_name = "Catalog_" + cla.dataset_name + parameters;
@@ -208,14 +233,15 @@ public class CSBFinderModel {
 
         Map<String, List<List<Gene>>> instances = new HashMap<>();
 
-        for (Map.Entry<Integer, List<InstanceLocation>> entry : groupSameSeqInstances(pattern).entrySet()) {
+        InstanceLocations instances_locations = new InstanceLocations(pattern);
+        for (int seq_key : instances_locations.getGenomes()) {
 
-            String seq_name = utils.genome_key_to_name.get(entry.getKey());
+            String seq_name = utils.genome_key_to_name.get(seq_key);
 
             List<List<Gene>> genomeInstances = new ArrayList<>();
 
-            List<InstanceLocation> instances_locations = entry.getValue();
-            for (InstanceLocation instance_location : instances_locations){
+            InstanceLocations.Cursor instance_location = instances_locations.getLocations(seq_key);
+            while (instance_location.next()){
 //                String replicon_name = utils.replicon_key_to_name.get(instance_location.getRepliconId());
                 List<Gene> genes = getInstanceFromCogList(seq_name, instance_location.getStartIndex(), instance_location.getEndIndex());
                 if (genes != null) {
@@ -254,32 +280,6 @@ public class CSBFinderModel {
         return instanceList;
     }
 
-    /**
-     * Group all instances of pattern that are located in the same sequence
-     * @param pattern
-     * @return
-     */
-    private Map<Integer, List<InstanceLocation>> groupSameSeqInstances(Pattern pattern){
-        Map<Integer, List<InstanceLocation>> instance_seq_to_location = new HashMap<>();
-        for (Instance instance : pattern.get_instances()) {
-
-            int instance_length = instance.getLength();
-            for (Map.Entry<Integer, List<InstanceLocation>> entry : instance.getInstanceLocations().entrySet()) {
-                int seq_key = entry.getKey();
-
-                if (!instance_seq_to_location.containsKey(seq_key)) {
-                    instance_seq_to_location.put(seq_key, new ArrayList<InstanceLocation>());
-                }
-                List<InstanceLocation> instances_locations = instance_seq_to_location.get(seq_key);
-                for (InstanceLocation instance_location : entry.getValue()) {
-                    instance_location.setEndIndex(instance_length);
-                    instances_locations.add(instance_location);
-                }
-            }
-        }
-        return instance_seq_to_location;
-    }
-
     public int getNumberOfGenomes() {
         return number_of_genomes;
     }
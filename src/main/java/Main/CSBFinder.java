@@ -1,10 +1,13 @@
 package Main;
 
 import IO.Writer;
-import Utils.WordArray;
 import SuffixTrees.*;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
 import Utils.*;
 
 /**
@@ -16,6 +19,15 @@ public class CSBFinder {
     public static long count_nodes_in_pattern_tree;
     public static long count_nodes_in_data_tree;
     private static final String DELIMITER = " ";
+    /**
+     * In memory saving mode with checkpoints, a checkpoint is written once this number of patterns wait for it
+     */
+    private static final int MAX_UNCHECKPOINTED_PATTERNS = 10000;
+    /**
+     * The counts of a context are added to the metrics, and the deadline of the enumeration is checked, each time this
+     * number of pattern nodes (+1) are visited
+     */
+    private static final long PUBLISH_METRICS_MASK = (1 << 12) - 1;
 
     private static int max_error;
     private static int max_wildcards;
@@ -26,22 +38,75 @@ public class CSBFinder {
     private int min_pattern_length;
     private int max_pattern_length;
 
-    private GeneralizedSuffixTree data_tree;
+    private FlatSuffixTree data_tree;
 
     //contains all extracted patterns
     private Map<String, Pattern> patterns;
+    /**
+     * The patterns in the order they were found, including the redundant patterns
+     */
+    private List<Pattern> found_patterns;
 
     private int gap_char;
     private int wildcard_char;
     private boolean mult_count;
 
-    private int last_pattern_key;
     private boolean memory_saving_mode;
 
     private boolean non_directons;
 
     private boolean debug;
 
+    /**
+     * Used for parallel enumeration, null if the enumeration is sequential
+     */
+    private ForkJoinPool fork_join_pool;
+    /**
+     * Decides which extensions are forked as separate tasks in a parallel enumeration
+     */
+    private ExtensionScheduler scheduler;
+    /**
+     * Keeps the patterns with the highest score when only the top patterns are reported, null if all the patterns are
+     * reported
+     */
+    private TopPatterns top_patterns;
+    /**
+     * Used to bound the length of the patterns in a subtree of the enumeration when only the top patterns are reported.
+     * For each data tree node, the length of the longest string below it that is a substring of at least q1 keys
+     */
+    private int[] max_string_depths;
+    /**
+     * Maximal length of a pattern, including wildcards, when only the top patterns are reported
+     */
+    private int max_top_pattern_length;
+    /**
+     * Scores and writes the patterns in memory saving mode, null in any other mode
+     */
+    private PatternPipeline pattern_pipeline;
+    /**
+     * Progress of the enumeration is written to it, null if no checkpoints are written
+     */
+    private EnumerationCheckpoint checkpoint;
+    private EnumerationMetrics metrics;
+    /**
+     * True if patterns are extracted from the data tree with no errors, deletions, insertions or wildcards and q1 > 0,
+     * see spellExactPatterns
+     */
+    private boolean exact_mode;
+    /**
+     * The chars that the patterns of this shard of the enumeration start with, null if all the patterns are enumerated
+     */
+    private BitSet first_chars;
+    /**
+     * Stops the enumeration before it ends, see EnumerationCancellation
+     */
+    private EnumerationCancellation cancellation;
+    /**
+     * The first chars of the patterns that were not enumerated because the enumeration was cancelled. Accessed by
+     * the tasks of the enumeration, synchronized on it
+     */
+    private BitSet unexplored_chars;
+
     int total_chars_in_data;
     Utils utils;
     Writer writer;
@@ -58,18 +123,31 @@ public class CSBFinder {
      * @param max_pattern_length
      * @param gap_char
      * @param wildcard_char
-     * @param data_t GST representing all input sequences
+     * @param data_t suffix tree representing all input sequences
      * @param pattern_trie
      * @param mult_count if true, counts one instance in each input sequence
      * @param utils
      * @param memory_saving_mode
      * @param writer
+     * @param non_directons
+     * @param num_of_threads number of threads used for the enumeration, 1 for a sequential enumeration
+     * @param top if positive, only the top patterns with the highest score are kept, and subtrees of the enumeration
+     *            that cannot contain such a pattern are not traversed
+     * @param first_chars if not null, only patterns that start with one of these chars are enumerated, the patterns
+     *                    that start with other chars are enumerated by other shards, see EnumerationShards
+     * @param checkpoint if not null, checkpoints of the enumeration are written to it, and the enumeration continues
+     *                   from the last checkpoint that it holds. Only used when pattern_trie is null
+     * @param metrics the counters of the enumeration are added to it while it runs, may be null
+     * @param cancellation if not null, the enumeration stops once it is cancelled, with the patterns whose subtrees
+     *                     were traversed to the end, see getUnexploredChars
      * @param debug
      */
     public CSBFinder(int max_error, int max_wildcards, int max_deletion, int max_insertion, int quorum1, int quorum2,
                      int min_pattern_length, int max_pattern_length, int gap_char, int wildcard_char,
-                     GeneralizedSuffixTree data_t, Trie pattern_trie, boolean mult_count, Utils utils,
-                     boolean memory_saving_mode, Writer writer, boolean non_directons, boolean debug){
+                     FlatSuffixTree data_t, Trie pattern_trie, boolean mult_count, Utils utils,
+                     boolean memory_saving_mode, Writer writer, boolean non_directons, int num_of_threads, int top,
+                     BitSet first_chars, EnumerationCheckpoint checkpoint, EnumerationMetrics metrics,
+                     EnumerationCancellation cancellation, boolean debug){
 
         patterns = new HashMap<>();
         this.max_error = max_error;
@@ -86,23 +164,97 @@ public class CSBFinder {
         this.mult_count = mult_count;
         total_chars_in_data = -1;
         this.utils = utils;
-        last_pattern_key = 0;
         this.memory_saving_mode = memory_saving_mode;
         this.writer = writer;
         this.non_directons = non_directons;
+        this.first_chars = first_chars;
+        this.checkpoint = pattern_trie == null ? checkpoint : null;
+        this.metrics = metrics == null ? new EnumerationMetrics() : metrics;
+        this.cancellation = cancellation == null ? new EnumerationCancellation() : cancellation;
+        unexplored_chars = new BitSet();
+        exact_mode = pattern_trie == null && max_error == 0 && max_deletion == 0 && max_insertion == 0 &&
+                max_wildcards == 0 && q1 > 0;
         this.debug = debug;
 
         count_nodes_in_pattern_tree = 0;
         count_nodes_in_data_tree = 0;
 
+        EnumerationContext context = new EnumerationContext();
+
         PatternNode pattern_tree_root;
         if (pattern_trie == null){//all patterns will be extracted from the data tree
             pattern_tree_root = new PatternNode(TreeType.VIRTUAL);
-            pattern_tree_root.setKey(++last_pattern_key);
+            pattern_tree_root.setKey(++context.last_pattern_key);
         }else {//if we were given patterns as input
             pattern_tree_root = pattern_trie.getRoot();
         }
-        findPatterns(pattern_tree_root);
+
+        fork_join_pool = null;
+        if (num_of_threads > 1) {
+            fork_join_pool = new ForkJoinPool(num_of_threads);
+            scheduler = new ExtensionScheduler(data_tree, max_insertion, num_of_threads);
+        }
+
+        top_patterns = null;
+        max_string_depths = null;
+        if (top > 0) {
+            top_patterns = new TopPatterns(top);
+            //the exact instance of a pattern is a string of the data tree, with at least q1 keys
+            max_string_depths = data_tree.getMaxStringDepths(Math.max(q1, 1));
+            max_top_pattern_length = max_string_depths[FlatSuffixTree.ROOT];
+            if (q1 <= 0) {
+                max_top_pattern_length += max_deletion;
+            }
+            if (max_pattern_length < Integer.MAX_VALUE - max_wildcards) {
+                max_top_pattern_length = Math.min(max_top_pattern_length, max_pattern_length + max_wildcards);
+            }
+            utils.initPatternScoreBound(max_top_pattern_length, max_insertion);
+        }
+
+        pattern_pipeline = null;
+        if (memory_saving_mode && top_patterns == null) {
+            pattern_pipeline = new PatternPipeline(utils, writer, max_insertion, max_error, max_deletion, non_directons,
+                    num_of_threads);
+            if (this.checkpoint == null) {
+                context.setPatternConsumer(pattern_pipeline::submit);
+            }
+        }
+        this.metrics.startEnumeration();
+        try {
+            findPatterns(pattern_tree_root, context);
+            context.publishMetrics(this.metrics);
+        }finally {
+            this.metrics.endEnumeration();
+            if (fork_join_pool != null) {
+                fork_join_pool.shutdown();
+            }
+            if (pattern_pipeline != null) {
+                pattern_pipeline.close();
+            }
+        }
+
+        found_patterns = context.patterns;
+        if (top_patterns != null) {
+            //the keys of the patterns depend on the subtrees that were pruned, and in a parallel enumeration on the
+            //order in which the tasks offered their patterns, so the top patterns are numbered by their rank
+            List<Pattern> kept_patterns = top_patterns.getPatterns();
+            for (int i = 0; i < kept_patterns.size(); i++) {
+                kept_patterns.get(i).setPatternId(i + 1);
+            }
+            found_patterns.addAll(kept_patterns);
+        }
+        for (Pattern pattern : found_patterns) {
+            patterns.put(pattern.getPattern(), pattern);
+        }
+        count_nodes_in_pattern_tree = context.count_nodes_in_pattern_tree;
+        count_nodes_in_data_tree = context.count_nodes_in_data_tree;
+    }
+
+    /**
+     * @return the pipeline that scored and wrote the patterns in memory saving mode, null in any other mode
+     */
+    PatternPipeline getPatternPipeline(){
+        return pattern_pipeline;
     }
 
     public int getPatternsCount(){
@@ -112,38 +264,213 @@ public class CSBFinder {
     /**
      * Calls the recursive function spellPatterns
      * @param pattern_node a node in the pattern tree, the pattern tree traversal begins from this node
+     * @param context collects the patterns that are found
      */
-    private void findPatterns(PatternNode pattern_node) {
+    private void findPatterns(PatternNode pattern_node, EnumerationContext context) {
 
-        data_tree.computeCount();
-        total_chars_in_data = ((InstanceNode) data_tree.getRoot()).getCount_by_indexes();
+        total_chars_in_data = data_tree.getCount_by_indexes(FlatSuffixTree.ROOT);
+        //the deadline may have passed before the enumeration started
+        cancellation.checkDeadline();
 
-        InstanceNode data_tree_root = (InstanceNode) data_tree.getRoot();
+        int data_tree_root = FlatSuffixTree.ROOT;
         //the instance of an empty string is the root of the data tree
-        Instance empty_instance = new Instance(data_tree_root, null, -1, 0, 0);
-        count_nodes_in_data_tree ++;
+        pattern_node.addInstance(data_tree, data_tree_root, FlatSuffixTree.NONE, -1, 0, 0, 0, 0);
+        context.count_nodes_in_data_tree ++;
 
-        pattern_node.addInstance(empty_instance, max_insertion);
         if (pattern_node.getType()== TreeType.VIRTUAL){
-            spellPatternsVirtually(pattern_node, data_tree_root, -1, null, "",
-                    0, 0);
+            if (fork_join_pool != null) {
+                long frontier_weight = scheduler.frontierWeight(pattern_node.getInstances());
+                long total_cost = scheduler.estimateCost(data_tree_root, frontier_weight);
+                if (first_chars != null) {
+                    //only the outgoing edges of the root that the patterns of the shard start with are extended
+                    total_cost = 0;
+                    for (int child = data_tree.getFirstChild(data_tree_root); child != FlatSuffixTree.NONE;
+                         child = data_tree.getNextSibling(child)) {
+                        if (isInShard(0, data_tree.getLabelChar(child, 0))) {
+                            total_cost += scheduler.estimateCost(child, frontier_weight);
+                        }
+                    }
+                }
+                scheduler.setTotalCost(total_cost);
+            }
+            if (checkpoint != null) {
+                spellPatternsWithCheckpoints(pattern_node, context);
+            }else if (exact_mode) {
+                if (fork_join_pool != null) {
+                    fork_join_pool.invoke(new EnumerationTask(task_context -> spellExactPatterns(data_tree_root,
+                            data_tree.getFirstChild(data_tree_root), FlatSuffixTree.NONE, 0, true, task_context),
+                            context));
+                }else {
+                    spellExactPatterns(data_tree_root, data_tree.getFirstChild(data_tree_root), FlatSuffixTree.NONE,
+                            0, true, context);
+                }
+            }else if (fork_join_pool != null) {
+                fork_join_pool.invoke(new EnumerationTask(task_context -> spellPatternsVirtually(pattern_node,
+                        data_tree_root, -1, FlatSuffixTree.NONE, 0, 0, task_context), context));
+            }else {
+                spellPatternsVirtually(pattern_node, data_tree_root, -1, FlatSuffixTree.NONE, 0, 0, context);
+            }
         }else {
-            spellPatterns(pattern_node, "", 0, 0);
+            spellPatterns(pattern_node, 0, 0, context);
+        }
+    }
+
+    /**
+     * Same as spellPatternsVirtually for the root of the data tree, with checkpoints.
+     * The outgoing edges of the root are extended one after the other, a checkpoint is written after an edge is
+     * extended if it is due, and after the last edge. The edges that were extended before the checkpoint that the run
+     * resumes from are not extended again, their patterns are read from the checkpoint. No checkpoint is written once the
+     * enumeration is cancelled, a run that resumes extends the edges after the last checkpoint again.
+     * In memory saving mode the patterns found since the last checkpoint are kept in context until it is written, and
+     * are only then passed to the pattern pipeline
+     *
+     * @param pattern_node the root of the pattern tree, its instance is the root of the data tree
+     * @param context collects the patterns that are found
+     */
+    private void spellPatternsWithCheckpoints(PatternNode pattern_node, EnumerationContext context){
+        int data_tree_root = FlatSuffixTree.ROOT;
+        int extended_root_edges = checkpoint.getExtendedRootEdges();
+        if (extended_root_edges > 0) {
+            restoreCheckpoint(context);
+        }
+        int checkpointed_patterns = context.patterns.size();
+
+        int edge = 0;
+        for (int child = data_tree.getFirstChild(data_tree_root); child != FlatSuffixTree.NONE;
+             child = data_tree.getNextSibling(child), edge++) {
+            if (edge < extended_root_edges) {
+                continue;
+            }
+            if (cancellation.checkDeadline()) {
+                markUnexploredEdges(child, FlatSuffixTree.NONE);
+                break;
+            }
+            int data_edge = child;
+            EnumerationStep step;
+            if (exact_mode) {
+                step = task_context -> spellExactPatterns(data_tree_root, data_edge,
+                        data_tree.getNextSibling(data_edge), 0, false, task_context);
+            }else {
+                step = task_context -> extendByDataEdge(data_tree.getLabelChar(data_edge, 0), data_edge,
+                        data_tree_root, 0, pattern_node, pattern_node.getInstances(), 0, 0, task_context);
+            }
+            if (fork_join_pool != null) {
+                fork_join_pool.invoke(new EnumerationTask(step, context));
+            }else {
+                step.run(context);
+            }
+
+            boolean last_edge = data_tree.getNextSibling(child) == FlatSuffixTree.NONE;
+            boolean too_many_patterns = memory_saving_mode
+                    && context.patterns.size() - checkpointed_patterns >= MAX_UNCHECKPOINTED_PATTERNS;
+            //the edge may not have been extended to the end if the enumeration was cancelled
+            if (!cancellation.isCancelled() && (last_edge || too_many_patterns || checkpoint.isDue())) {
+                checkpointed_patterns = writeCheckpoint(edge + 1, context, checkpointed_patterns);
+            }
         }
+        if (cancellation.isCancelled() && pattern_pipeline != null) {
+            //the patterns found since the last checkpoint are not written to a checkpoint, but are still reported
+            for (Pattern pattern : context.patterns) {
+                pattern_pipeline.submit(pattern);
+            }
+            context.patterns.clear();
+        }
+        context.count_nodes_in_pattern_tree++;
     }
 
+    /**
+     * Continues from the checkpoint: restores the keys and counters of context, and handles the patterns that were
+     * found before it the same way as they were handled when they were found
+     * @param context
+     */
+    private void restoreCheckpoint(EnumerationContext context){
+        checkpoint.restoreContext(context);
+        if (top_patterns != null) {
+            for (Pattern pattern : checkpoint.readTopPatterns(data_tree)) {
+                pattern.calculateScore(utils, max_insertion, max_error, max_deletion);
+                top_patterns.offer(pattern);
+            }
+        }else if (pattern_pipeline != null) {
+            checkpoint.readPatterns(data_tree, pattern_pipeline::submit);
+        }else {
+            checkpoint.readPatterns(data_tree, context.patterns::add);
+        }
+    }
 
     /**
-     * works as the regular substring function
+     * Writes a checkpoint of the patterns found so far. In memory saving mode, the patterns of the checkpoint are
+     * then passed to the pattern pipeline and removed from context
      *
-     * @param seq
-     * @param start_index
-     * @param end_index
-     * @return
+     * @param extended_root_edges number of outgoing edges of the data tree root that were extended
+     * @param context
+     * @param checkpointed_patterns context.patterns[0:checkpointed_patterns] were written in previous checkpoints
+     * @return the number of patterns in context that are written in checkpoints
      */
-    private WordArray getSubstring(WordArray seq, int start_index, int end_index) {
-        return new WordArray(seq.wordArray, seq.get_start_index() + start_index,
-                seq.get_start_index() + end_index);
+    private int writeCheckpoint(int extended_root_edges, EnumerationContext context, int checkpointed_patterns){
+        List<Pattern> new_patterns = context.patterns.subList(checkpointed_patterns, context.patterns.size());
+        List<Pattern> kept_patterns = top_patterns == null ? null : top_patterns.getPatterns();
+        if (!checkpoint.write(extended_root_edges, context, new_patterns, kept_patterns)) {
+            return checkpointed_patterns;
+        }
+
+        if (pattern_pipeline != null) {
+            for (Pattern pattern : context.patterns) {
+                pattern_pipeline.submit(pattern);
+            }
+            context.patterns.clear();
+        }
+        return context.patterns.size();
+    }
+
+    /**
+     * A unit of enumeration work, that records its results in the given context
+     */
+    private interface EnumerationStep {
+        int run(EnumerationContext context);
+    }
+
+    /**
+     * Runs an EnumerationStep in the fork join pool
+     */
+    private class EnumerationTask extends RecursiveTask<Integer> {
+        private final EnumerationStep step;
+        private final EnumerationContext context;
+
+        EnumerationTask(EnumerationStep step, EnumerationContext context){
+            this.step = step;
+            this.context = context;
+        }
+
+        EnumerationTask(EnumerationStep step){
+            this(step, new EnumerationContext());
+        }
+
+        @Override
+        protected Integer compute() {
+            return step.run(context);
+        }
+    }
+
+    /**
+     * Runs the steps in parallel, and merges their results into context by the order of the steps
+     * @return the maximal value returned by a step
+     */
+    private int forkSteps(List<EnumerationStep> steps, EnumerationContext context){
+        List<EnumerationTask> tasks = new ArrayList<>(steps.size());
+        for (EnumerationStep step : steps) {
+            tasks.add(new EnumerationTask(step));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        int max_num_of_diff_instances = -1;
+        for (EnumerationTask task : tasks) {
+            int num_of_diff_instances = task.join();
+            if (num_of_diff_instances > max_num_of_diff_instances) {
+                max_num_of_diff_instances = num_of_diff_instances;
+            }
+            context.merge(task.context);
+        }
+        return max_num_of_diff_instances;
     }
 
 
@@ -155,6 +482,15 @@ public class CSBFinder {
      * Therefore it is sufficient to remove each pattern suffix if it has the same instance count
      */
     public void removeRedundantPatterns() {
+        removeRedundantPatterns(patterns, non_directons);
+    }
+
+    /**
+     * Same as removeRedundantPatterns(), for patterns that were selected from the patterns of a CSBFinder
+     * @param patterns patterns by their string, the redundant patterns are removed from it
+     * @param non_directons
+     */
+    static void removeRedundantPatterns(Map<String, Pattern> patterns, boolean non_directons) {
         HashSet<String> patterns_to_remove = new HashSet<>();
         for (Map.Entry<String, Pattern> entry : patterns.entrySet()) {
 
@@ -205,29 +541,40 @@ public class CSBFinder {
         }
     }
 
-    private Boolean starts_with_wildcard(String pattern) {
-        if (pattern.length() > 0) {
-            if (pattern.charAt(0) == '*') {
-                return true;
-            }
-        }
-        return false;
+    /**
+     * @param pattern chars of the pattern, indexes in utils.index_to_char
+     * @param pattern_length
+     * @param prefix
+     * @return true if the string of the pattern starts with prefix
+     */
+    private boolean startsWith(int[] pattern, int pattern_length, String prefix) {
+        return pattern_length > 0 && utils.index_to_char.get(pattern[0]).startsWith(prefix);
     }
 
     /**
-     * Adds a character to str
-     * @param str
-     * @param ch the index of the character to add, converted to a letter
-     * @return the extended str
+     * Creates the strings of a pattern, only done for patterns that are reported
+     * @param pattern_node
+     * @param pattern chars of the pattern, indexes in utils.index_to_char
+     * @param pattern_length
+     * @return
      */
-    private String appendChar(String str, int ch) {
-        String cog = utils.index_to_char.get(ch);
-        //System.out.println(cog);
-        String extended_string = str + cog + DELIMITER;
-        extended_string.intern();
-        return extended_string;
+    private Pattern createPattern(PatternNode pattern_node, int[] pattern, int pattern_length) {
+        return createPattern(pattern_node.getPatternKey(), pattern, pattern_length,
+                pattern_node.getInstanceKeysSize(), pattern_node.getInstances(),
+                pattern_node.getExact_instance_count());
     }
 
+    private Pattern createPattern(int pattern_key, int[] pattern, int pattern_length, int instance_count,
+                                  InstanceList instances, int exact_instance_count) {
+        String[] pattern_arr = new String[pattern_length];
+        for (int i = 0; i < pattern_length; i++) {
+            pattern_arr[i] = utils.index_to_char.get(pattern[i]);
+        }
+        String pattern_str = String.join(DELIMITER, pattern_arr) + DELIMITER;
+
+        return new Pattern(pattern_key, pattern_str, pattern_arr, pattern_length, instance_count, instances,
+                exact_instance_count);
+    }
 
     /**
      * Recursive function that traverses over the subtree rooted at pattern_node, which is a node of a suffix tree.
@@ -235,35 +582,45 @@ public class CSBFinder {
      * and q2 approximate instances)
      *
      * @param pattern_node node in the enumeration tree that represents the current pattern
-     * @param pattern     represents a string concatenation of edge labels from root to pattern_node
-     * @param pattern_length
+     * @param pattern_length the pattern is context.pattern[0:pattern_length], the concatenation of edge labels from
+     *                       root to pattern_node
      * @param pattern_wildcard_count  number of wildcards in the pattern
+     * @param context collects the patterns that are found
      * @return The maximal number of different string indexes that one of the extended patterns by a char appear in
      */
-    private int spellPatterns(PatternNode pattern_node, String pattern, int pattern_length, int pattern_wildcard_count) {
+    private int spellPatterns(PatternNode pattern_node, int pattern_length, int pattern_wildcard_count,
+                              EnumerationContext context) {
         if (pattern_wildcard_count < max_wildcards && pattern_node.getType().equals("enumeration")) {
             //add to pattern_node an edge with "_", pointing to a new node that will save the instances
             addWildcardEdge(pattern_node, true);
         }
 
-        List<Instance> instances = pattern_node.getInstances();
+        InstanceList instances = pattern_node.getInstances();
 
-        Map<Integer, PatternNode> target_nodes = pattern_node.getTarget_nodes();
+        IntMap<PatternNode> target_nodes = pattern_node.getTarget_nodes();
 
         //the maximal number of different instances, of one of the extended patterns
         int max_num_of_diff_instances = -1;
         int num_of_diff_instance = 0;
 
         PatternNode target_node;
-        for (Map.Entry<Integer, PatternNode> entry : target_nodes.entrySet()) {
-            int alpha = entry.getKey();
-            String alpha_ch = utils.index_to_char.get(alpha);
-            target_node = entry.getValue();
+        for (int i = 0; i < target_nodes.size(); i++) {
+            if (cancellation.isCancelled()) {
+                if (pattern_length == 0) {
+                    for (int j = i; j < target_nodes.size(); j++) {
+                        markUnexplored(target_nodes.keyAt(j));
+                    }
+                }
+                return -1;
+            }
+            int alpha = target_nodes.keyAt(i);
+            target_node = target_nodes.valueAt(i);
 
             //go over edges that are not wild cards
-            if (alpha!=wildcard_char) {
-                num_of_diff_instance = extendPattern(alpha, -1, null, null,
-                                    pattern_wildcard_count, pattern, target_node, pattern_node, instances, pattern_length);
+            if (alpha!=wildcard_char && isInShard(pattern_length, alpha)) {
+                num_of_diff_instance = extendPattern(alpha, -1, FlatSuffixTree.NONE, FlatSuffixTree.NONE,
+                                    pattern_wildcard_count, target_node, pattern_node, instances, pattern_length,
+                                    context);
 
                 if (num_of_diff_instance > max_num_of_diff_instances) {
                     max_num_of_diff_instances = num_of_diff_instance;
@@ -277,145 +634,706 @@ public class CSBFinder {
         if (pattern_node.getType().equals("pattern") || pattern_wildcard_count < max_wildcards) {
             target_node = pattern_node.getTargetNode(wildcard_char);
             if (target_node != null) {
-                num_of_diff_instance = extendPattern(wildcard_char, -1, null, null,
-                            pattern_wildcard_count + 1, pattern, target_node, pattern_node, instances, pattern_length);
+                num_of_diff_instance = extendPattern(wildcard_char, -1, FlatSuffixTree.NONE, FlatSuffixTree.NONE,
+                            pattern_wildcard_count + 1, target_node, pattern_node, instances, pattern_length,
+                            context);
                 if (num_of_diff_instance > max_num_of_diff_instances) {
                     max_num_of_diff_instances = num_of_diff_instance;
                 }
             }
         }
-        count_nodes_in_pattern_tree++;
+        context.count_nodes_in_pattern_tree++;
+        if ((context.count_nodes_in_pattern_tree & PUBLISH_METRICS_MASK) == 0) {
+            context.publishMetrics(metrics);
+            cancellation.checkDeadline();
+        }
 
         return max_num_of_diff_instances;
     }
 
 
     /**
-     * * Recursive function that traverses over the subtree rooted at pattern_node, which is a node of a suffix tree.
+     * Traverses over the subtree rooted at pattern_node, which is a node of a suffix tree.
      * This operation 'spells' all possible strings with infix 'pattern', that have enough instances (q1 exact instances
      * and q2 approximate instances)
      * It is same as spellPatterns, only that the suffix tree of patterns is not saved in memory, it is created virtually
      * from data suffix tree.
+     * The traversal keeps its frames in context.stack instead of recursing, see EnumerationStack. A node frame extends
+     * its pattern by one char at a time. An extension that passes the quorum pushes an extension frame and the node
+     * frame of the extended pattern, and is finished by finishExtension once the node frame is popped.
      *
      * @param pattern_node
      * @param data_node
      * @param data_edge_index
-     * @param data_edge
-     * @param pattern
-     * @param pattern_length
+     * @param data_edge the node that the data edge enters, FlatSuffixTree.NONE if the pattern ends in data_node
+     * @param pattern_length the pattern is context.pattern[0:pattern_length]
      * @param wildcard_count
-     * @return
+     * @param context collects the patterns that are found
+     * @return the maximal number of different instances, of one of the extended patterns
      */
-    private int spellPatternsVirtually(PatternNode pattern_node, InstanceNode data_node, int data_edge_index,
-                                       Edge data_edge,
-                                       String pattern, int pattern_length, int wildcard_count) {
+    private int spellPatternsVirtually(PatternNode pattern_node, int data_node, int data_edge_index,
+                                       int data_edge, int pattern_length, int wildcard_count,
+                                       EnumerationContext context) {
+        EnumerationStack stack = context.stack;
+        //the stack may hold frames of a traversal that called this one, they are below base
+        int base = stack.size();
+        pushNodeFrame(stack, pattern_node, data_node, data_edge_index, data_edge, pattern_length, wildcard_count,
+                false, context);
+
+        int result = 0;
+        boolean has_result = false;
+        while (true) {
+            if (cancellation.isCancelled()) {
+                return cancelTraversal(stack, base, context);
+            }
+            EnumerationStack.Frame frame = stack.peek();
+
+            if (has_result) {
+                has_result = false;
+                if (frame.is_extension) {
+                    result = finishExtension(frame.pattern_node, frame.alpha, frame.diff_instances_count, result,
+                            frame.pattern_length, frame.wildcard_count, context);
+                    stack.pop();
+                    has_result = true;
+                    continue;
+                }
+                if (result > frame.max_num_of_diff_instances) {
+                    frame.max_num_of_diff_instances = result;
+                }
+            }
 
-        List<Instance> instances = pattern_node.getInstances();
-        //the maximal number of different instances, of one of the extended patterns
-        int max_num_of_diff_instances = -1;
-        int num_of_diff_instances = 0;
+            //extend the pattern of the node frame by its next char
+            int alpha = utils.UNK_CHAR_INDEX;
+            int next_data_edge = FlatSuffixTree.NONE;
+            boolean done = false;
+            if (frame.data_edge == FlatSuffixTree.NONE) {
+                next_data_edge = frame.next_data_edge;
+                if (next_data_edge == FlatSuffixTree.NONE) {
+                    done = true;
+                }else {
+                    frame.next_data_edge = data_tree.getNextSibling(next_data_edge);
+                    alpha = data_tree.getLabelChar(next_data_edge, 0);
+                }
+            }else if (frame.data_edge_extended) {
+                done = true;
+            }else {
+                frame.data_edge_extended = true;
+                next_data_edge = frame.data_edge;
+                alpha = data_tree.getLabelChar(next_data_edge, frame.data_edge_index);
+            }
 
-        Map<Integer, Edge> data_node_edges = null;
+            if (done) {
+                context.count_nodes_in_pattern_tree++;
+                if ((context.count_nodes_in_pattern_tree & PUBLISH_METRICS_MASK) == 0) {
+                    context.publishMetrics(metrics);
+                    cancellation.checkDeadline();
+                }
+                result = frame.ignore_result ? -1 : frame.max_num_of_diff_instances;
+                stack.pop();
+                if (stack.size() == base) {
+                    return result;
+                }
+                has_result = true;
+                continue;
+            }
 
-        WordArray data_edge_label;
-        if (data_edge != null) {
-            data_edge_label = data_edge.getLabel();
-            if (data_edge_index >= data_edge_label.get_length()) {//we reached to the end of the edge
-                data_node = (InstanceNode) data_edge.getDest();
+            if (data_tree.getCount_by_keys(next_data_edge) < q1) {
+                continue;
+            }
+            //the data node and data edge index of the extended pattern
+            int data_edge_index_of_edge = frame.data_edge == FlatSuffixTree.NONE ? 0 : frame.data_edge_index;
+            if (alpha == utils.UNK_CHAR_INDEX) {
+                //an unknown char that starts an edge is skipped, the pattern is extended by the chars that follow it
+                if (frame.data_edge == FlatSuffixTree.NONE && q1 == 0 &&
+                        !startsWith(context.pattern, frame.pattern_length, "X")) {
+                    pushNodeFrame(stack, frame.pattern_node, frame.data_node, 1, next_data_edge,
+                            frame.pattern_length, frame.wildcard_count, true, context);
+                }
+                continue;
+            }
+            if (!isInShard(frame.pattern_length, alpha)) {
+                continue;
+            }
+
+            PatternNode target_node = new PatternNode(TreeType.VIRTUAL);
+            target_node.setKey(++context.last_pattern_key);
+
+            PatternNode extended_pattern_node = extendInstances(alpha, frame.wildcard_count, target_node,
+                    frame.pattern_node, frame.instances, frame.pattern_length, context);
+            int diff_instances_count = getDiffInstancesCount(extended_pattern_node);
+            int extended_pattern_length = frame.pattern_length + 1;
+
+            if (canExtend(extended_pattern_node, alpha, diff_instances_count, extended_pattern_length,
+                    frame.wildcard_count, context)) {
+                int data_node_of_edge = frame.data_node;
+                int wildcard_count_of_edge = frame.wildcard_count;
+
+                EnumerationStack.Frame extension = stack.push();
+                extension.is_extension = true;
+                extension.pattern_node = extended_pattern_node;
+                extension.alpha = alpha;
+                extension.diff_instances_count = diff_instances_count;
+                extension.pattern_length = extended_pattern_length;
+                extension.wildcard_count = wildcard_count_of_edge;
+
+                pushNodeFrame(stack, extended_pattern_node, data_node_of_edge, data_edge_index_of_edge + 1,
+                        next_data_edge, extended_pattern_length, wildcard_count_of_edge, false, context);
+            }else if (diff_instances_count > frame.max_num_of_diff_instances) {
+                frame.max_num_of_diff_instances = diff_instances_count;
+            }
+        }
+    }
+
+    /**
+     * Pushes the node frame of spellPatternsVirtually(pattern_node, data_node, data_edge_index, data_edge, ...).
+     * In parallel mode, if the scheduler splits the outgoing edges of data_node to several tasks, they are forked here,
+     * and the frame is left with no edges to extend
+     */
+    private void pushNodeFrame(EnumerationStack stack, PatternNode pattern_node, int data_node, int data_edge_index,
+                               int data_edge, int pattern_length, int wildcard_count, boolean ignore_result,
+                               EnumerationContext context){
+        if (data_edge != FlatSuffixTree.NONE) {
+            if (data_edge_index >= data_tree.getLabelLength(data_edge)) {//we reached to the end of the edge
+                data_node = data_edge;
                 data_edge_index = -1;
-                data_edge = null;
+                data_edge = FlatSuffixTree.NONE;
             }
         }
 
-        PatternNode target_node;
+        EnumerationStack.Frame frame = stack.push();
+        frame.is_extension = false;
+        frame.pattern_node = pattern_node;
+        frame.instances = pattern_node.getInstances();
+        frame.data_node = data_node;
+        frame.data_edge_index = data_edge_index;
+        frame.data_edge = data_edge;
+        frame.pattern_length = pattern_length;
+        frame.wildcard_count = wildcard_count;
+        frame.max_num_of_diff_instances = -1;
+        frame.ignore_result = ignore_result;
+        frame.data_edge_extended = false;
+        frame.next_data_edge = FlatSuffixTree.NONE;
+        frame.end_data_edge = FlatSuffixTree.NONE;
+
+        if (data_edge == FlatSuffixTree.NONE) {
+            frame.next_data_edge = data_tree.getFirstChild(data_node);
+            if (fork_join_pool != null) {
+                List<EnumerationStep> steps = splitDataEdges(data_node, pattern_node, frame.instances,
+                        pattern_length, wildcard_count, context);
+                if (steps != null) {
+                    frame.max_num_of_diff_instances = forkSteps(steps, context);
+                    frame.next_data_edge = FlatSuffixTree.NONE;
+                }
+            }
+        }
+    }
 
-        if (data_edge_index == -1){
-            data_edge_index ++;
-            data_node_edges = data_node.getEdges();
+    /**
+     * Used in parallel mode: the scheduler estimates the cost of extending the pattern by the first char of each
+     * outgoing edge of data_node, expensive extensions are forked as separate tasks and cheap ones are batched to tasks
+     * that extend them one after the other.
+     *
+     * @return the steps of the tasks, null if the edges are not split and are extended by the current task
+     */
+    private List<EnumerationStep> splitDataEdges(int data_node, PatternNode pattern_node, InstanceList instances,
+                                                 int pattern_length, int wildcard_count,
+                                                 EnumerationContext context){
+
+        int num_of_edges = data_tree.getNumberOfChildren(data_node);
+        int[] alphas = new int[num_of_edges];
+        int[] data_edges = new int[num_of_edges];
+        long[] costs = new long[num_of_edges];
+
+        long frontier_weight = scheduler.frontierWeight(instances);
+        int i = 0;
+        for (int child = data_tree.getFirstChild(data_node); child != FlatSuffixTree.NONE;
+             child = data_tree.getNextSibling(child)) {
+            alphas[i] = data_tree.getLabelChar(child, 0);
+            data_edges[i] = child;
+            costs[i] = isInShard(pattern_length, alphas[i]) ? scheduler.estimateCost(child, frontier_weight) : 0;
+            i++;
+        }
 
-            for (Map.Entry<Integer, Edge> entry : data_node_edges.entrySet()) {
-                int alpha = entry.getKey();
-                String alpha_ch = utils.index_to_char.get(alpha);
-                data_edge = entry.getValue();
-                InstanceNode data_tree_target_node = (InstanceNode) data_edge.getDest();
+        List<int[]> batches = scheduler.batch(costs);
+        if (batches.size() <= 1) {
+            return null;
+        }
 
-                if (data_tree_target_node.getCount_by_keys() >= q1) {
+        //every task extends its own copy of the pattern
+        int[] pattern = Arrays.copyOf(context.pattern, pattern_length);
+        List<EnumerationStep> steps = new ArrayList<>(batches.size());
+        for (int[] batch : batches) {
+            steps.add(task_context -> {
+                task_context.setPattern(pattern);
+                return extendByDataEdges(alphas, data_edges, batch[0], batch[1], data_node, 0,
+                        pattern_node, instances, pattern_length, wildcard_count, task_context);
+            });
+        }
+        return steps;
+    }
 
-                    if (alpha == utils.UNK_CHAR_INDEX) {
-                        if (q1 == 0 && !pattern.startsWith("X")) {
-                            spellPatternsVirtually(pattern_node, data_node, data_edge_index + 1, data_edge,
-                            pattern, pattern_length, wildcard_count);
-                        }
-                    } else {
+    /**
+     * The enumeration of exact mode, used instead of spellPatternsVirtually when no errors, deletions, insertions or
+     * wildcards are allowed and q1 > 0.
+     * The only instance of a pattern is then the position in the data tree where its string ends, and its counts are the
+     * counts of the node below that position, so the pattern tree is traversed along with the data tree, with no
+     * pattern nodes or instances. It finds the same patterns, with the same keys, as spellPatternsVirtually.
+     * Each frame of context.stack is a pattern that extends the pattern of the frame below it by one char.
+     *
+     * @param data_node the pattern ends in data_node
+     * @param first_data_edge the pattern is extended by the outgoing edges of data_node from first_data_edge
+     * @param end_data_edge up to end_data_edge (excluded), FlatSuffixTree.NONE to extend it by all the edges that
+     *                      follow first_data_edge
+     * @param pattern_length the pattern is context.pattern[0:pattern_length]
+     * @param count_node true if the pattern of data_node is counted as a node of the pattern tree here, false if the
+     *                   caller counts it. In parallel mode, only the edges of a pattern that is counted here are
+     *                   split to tasks, the edges of the other patterns were split by the caller
+     * @param context collects the patterns that are found
+     * @return the maximal number of different instances, of one of the extended patterns
+     */
+    private int spellExactPatterns(int data_node, int first_data_edge, int end_data_edge, int pattern_length,
+                                   boolean count_node, EnumerationContext context) {
+        EnumerationStack stack = context.stack;
+        int base = stack.size();
+        EnumerationStack.Frame frame = stack.push();
+        frame.is_extension = false;
+        frame.data_node = data_node;
+        frame.data_edge = FlatSuffixTree.NONE;
+        frame.data_edge_index = -1;
+        frame.next_data_edge = first_data_edge;
+        frame.end_data_edge = end_data_edge;
+        frame.pattern_length = pattern_length;
+        frame.max_num_of_diff_instances = -1;
+        //the edges of a forked task were already split by the task that forked it
+        if (fork_join_pool != null && count_node) {
+            forkExactFrame(frame, context);
+        }
 
-                        target_node = new PatternNode(TreeType.VIRTUAL);
-                        target_node.setKey(++last_pattern_key);
+        while (true) {
+            if (cancellation.isCancelled()) {
+                return cancelTraversal(stack, base, context);
+            }
+            frame = stack.peek();
+
+            //the next char of the data tree to extend the pattern by is data_edge[index]
+            int data_edge = FlatSuffixTree.NONE;
+            int index = 0;
+            boolean done = false;
+            if (frame.data_edge == FlatSuffixTree.NONE) {
+                data_edge = frame.next_data_edge;
+                if (data_edge == frame.end_data_edge) {
+                    done = true;
+                }else {
+                    frame.next_data_edge = data_tree.getNextSibling(data_edge);
+                }
+            }else if (frame.data_edge_extended) {
+                done = true;
+            }else {
+                frame.data_edge_extended = true;
+                data_edge = frame.data_edge;
+                index = frame.data_edge_index;
+            }
 
-                        num_of_diff_instances = extendPattern(alpha, data_edge_index + 1, data_node, data_edge,
-                                wildcard_count, pattern, target_node, pattern_node, instances, pattern_length);
+            if (done) {
+                boolean is_base = stack.size() - 1 == base;
+                if (!is_base || count_node) {
+                    context.count_nodes_in_pattern_tree++;
+                    if ((context.count_nodes_in_pattern_tree & PUBLISH_METRICS_MASK) == 0) {
+                        context.publishMetrics(metrics);
+                        cancellation.checkDeadline();
+                    }
+                }
+                int ret = frame.max_num_of_diff_instances;
+                if (is_base) {
+                    stack.pop();
+                    return ret;
+                }
 
-                        if (num_of_diff_instances > max_num_of_diff_instances) {
-                            max_num_of_diff_instances = num_of_diff_instances;
-                        }
+                //same as finishExtension, the pattern is added if it is right maximal
+                int diff_instances_count = frame.diff_instances_count;
+                if (cancellation.isCancelled()) {
+                    if (frame.pattern_length == 1) {
+                        markUnexplored(context.pattern[0]);
                     }
+                }else if (frame.pattern_length >= min_pattern_length && (diff_instances_count > ret || debug)) {
+                    handlePattern(createExactPattern(frame, context), context);
+                }
+                stack.pop();
+                EnumerationStack.Frame parent = stack.peek();
+                if (diff_instances_count > parent.max_num_of_diff_instances) {
+                    parent.max_num_of_diff_instances = diff_instances_count;
+                }
+                continue;
+            }
+
+            //the instance of the extended pattern ends in data_edge, its counts are the counts of data_edge
+            if (data_tree.getCount_by_keys(data_edge) < q1) {
+                continue;
+            }
+            int alpha = data_tree.getLabelChar(data_edge, index);
+            if (alpha == utils.UNK_CHAR_INDEX || !isInShard(frame.pattern_length, alpha)) {
+                continue;
+            }
+            int pattern_key = ++context.last_pattern_key;
+            int extended_pattern_length = frame.pattern_length + 1;
+            context.setPatternChar(frame.pattern_length, alpha);
+            context.count_nodes_in_data_tree++;
+            context.count(EnumerationMetrics.Counter.INSTANCES);
+
+            int diff_instances_count = mult_count ? data_tree.getCount_by_indexes(data_edge) :
+                    data_tree.getCount_by_keys(data_edge);
+            boolean can_extend = true;
+            if (diff_instances_count < q2 || extended_pattern_length > max_pattern_length) {
+                context.count(EnumerationMetrics.Counter.PRUNED_QUORUM);
+                can_extend = false;
+            }else if (top_patterns != null && !canContainTopPattern(extended_pattern_length,
+                    max_string_depths[data_edge], data_tree.getCount_by_keys(data_edge))) {
+                context.count(EnumerationMetrics.Counter.PRUNED_TOP_BOUND);
+                can_extend = false;
+            }
+            if (!can_extend) {
+                if (diff_instances_count > frame.max_num_of_diff_instances) {
+                    frame.max_num_of_diff_instances = diff_instances_count;
                 }
+                continue;
             }
-        }else{//data_edge_index>=1 && data_edge_index < data_edge_label.get_length()
-            data_edge_label = data_edge.getLabel();
-            int alpha = data_edge_label.get_index(data_edge_index);
 
-            InstanceNode data_tree_target_node = (InstanceNode) data_edge.getDest();
+            int parent_data_node = frame.data_node;
+            EnumerationStack.Frame extension = stack.push();
+            extension.is_extension = true;
+            extension.pattern_key = pattern_key;
+            extension.pattern_length = extended_pattern_length;
+            extension.diff_instances_count = diff_instances_count;
+            extension.max_num_of_diff_instances = -1;
+            extension.data_edge_extended = false;
+            extension.end_data_edge = FlatSuffixTree.NONE;
+            if (index + 1 >= data_tree.getLabelLength(data_edge)) {//the pattern ends in the node below data_edge
+                extension.data_node = data_edge;
+                extension.data_edge = FlatSuffixTree.NONE;
+                extension.data_edge_index = -1;
+                extension.next_data_edge = data_tree.getFirstChild(data_edge);
+                if (fork_join_pool != null) {
+                    forkExactFrame(extension, context);
+                }
+            }else {
+                extension.data_node = parent_data_node;
+                extension.data_edge = data_edge;
+                extension.data_edge_index = index + 1;
+                extension.next_data_edge = FlatSuffixTree.NONE;
+            }
+        }
+    }
 
-            if (data_tree_target_node.getCount_by_keys() >= q1) {
-                if (alpha != utils.UNK_CHAR_INDEX) {
+    /**
+     * Used in parallel exact mode: if the scheduler splits the outgoing edges of the data node of frame to several
+     * tasks, they are forked here, each runs spellExactPatterns for its edges. The frame is then left with no edges to
+     * extend
+     *
+     * @param frame a frame of spellExactPatterns whose pattern ends in its data node, and is extended by all of its
+     *              outgoing edges
+     * @param context
+     */
+    private void forkExactFrame(EnumerationStack.Frame frame, EnumerationContext context) {
+        int data_node = frame.data_node;
+        int pattern_length = frame.pattern_length;
+        //the only instance of the pattern makes no insertions, its frontier weight is 1
+        if (!scheduler.exceedsGrain(scheduler.estimateCost(data_node, 1))) {
+            return;
+        }
+        int num_of_edges = data_tree.getNumberOfChildren(data_node);
+        int[] data_edges = new int[num_of_edges + 1];
+        long[] costs = new long[num_of_edges];
+        int i = 0;
+        for (int child = data_tree.getFirstChild(data_node); child != FlatSuffixTree.NONE;
+             child = data_tree.getNextSibling(child)) {
+            data_edges[i] = child;
+            costs[i] = isInShard(pattern_length, data_tree.getLabelChar(child, 0)) ?
+                    scheduler.estimateCost(child, 1) : 0;
+            i++;
+        }
+        data_edges[num_of_edges] = FlatSuffixTree.NONE;
 
-                    target_node = new PatternNode(TreeType.VIRTUAL);
-                    target_node.setKey(++last_pattern_key);
+        List<int[]> batches = scheduler.batch(costs);
+        if (batches.size() <= 1) {
+            return;
+        }
 
-                    num_of_diff_instances = extendPattern(alpha, data_edge_index + 1, data_node, data_edge,
-                            wildcard_count, pattern, target_node, pattern_node, instances, pattern_length);
+        //every task extends its own copy of the pattern
+        int[] pattern = Arrays.copyOf(context.pattern, pattern_length);
+        List<EnumerationStep> steps = new ArrayList<>(batches.size());
+        for (int[] batch : batches) {
+            steps.add(task_context -> {
+                task_context.setPattern(pattern);
+                return spellExactPatterns(data_node, data_edges[batch[0]], data_edges[batch[1]], pattern_length,
+                        false, task_context);
+            });
+        }
+        frame.max_num_of_diff_instances = forkSteps(steps, context);
+        frame.next_data_edge = frame.end_data_edge;
+    }
+
+    /**
+     * @param frame a frame of spellExactPatterns
+     * @param context
+     * @return the pattern of the frame, with its instance
+     */
+    private Pattern createExactPattern(EnumerationStack.Frame frame, EnumerationContext context) {
+        InstanceList instances = new InstanceList();
+        int instance_node;
+        if (frame.data_edge == FlatSuffixTree.NONE) {
+            instance_node = frame.data_node;
+            instances.add(data_tree, frame.data_node, FlatSuffixTree.NONE, -1, 0, 0, 0, frame.pattern_length);
+        }else {
+            instance_node = frame.data_edge;
+            instances.add(data_tree, frame.data_node, frame.data_edge, frame.data_edge_index - 1, 0, 0, 0,
+                    frame.pattern_length);
+        }
+        int keys = data_tree.getCount_by_keys(instance_node);
+        return createPattern(frame.pattern_key, context.pattern, frame.pattern_length, keys, instances, keys);
+    }
 
-                    if (num_of_diff_instances > max_num_of_diff_instances) {
-                        max_num_of_diff_instances = num_of_diff_instances;
+    /**
+     * Calls extendByDataEdge for data_edges[from:to]
+     * @return the maximal number of different instances, of one of the extended patterns
+     */
+    private int extendByDataEdges(int[] alphas, int[] data_edges, int from, int to, int data_node,
+                                  int data_edge_index, PatternNode pattern_node, InstanceList instances,
+                                  int pattern_length, int wildcard_count, EnumerationContext context){
+        int max_num_of_diff_instances = -1;
+        for (int i = from; i < to; i++) {
+            if (cancellation.checkDeadline()) {
+                if (pattern_length == 0) {
+                    for (int j = i; j < to; j++) {
+                        markUnexploredEdges(data_edges[j], data_tree.getNextSibling(data_edges[j]));
                     }
                 }
+                break;
+            }
+            int num_of_diff_instances = extendByDataEdge(alphas[i], data_edges[i], data_node, data_edge_index,
+                    pattern_node, instances, pattern_length, wildcard_count, context);
+            if (num_of_diff_instances > max_num_of_diff_instances) {
+                max_num_of_diff_instances = num_of_diff_instances;
             }
         }
+        return max_num_of_diff_instances;
+    }
 
-        count_nodes_in_pattern_tree++;
+    /**
+     * Extends the pattern by the first char of an outgoing edge of data_node, data_edge
+     *
+     * @param alpha the first char of data_edge
+     * @param data_edge outgoing edge of data_node, represented by the node it enters
+     * @param data_node
+     * @param data_edge_index
+     * @param pattern_node
+     * @param instances instances of the pattern
+     * @param pattern_length the pattern is context.pattern[0:pattern_length]
+     * @param wildcard_count
+     * @param context collects the patterns that are found
+     * @return num of different instances of extended pattern, -1 if the pattern was not extended by alpha
+     */
+    private int extendByDataEdge(int alpha, int data_edge, int data_node, int data_edge_index,
+                                 PatternNode pattern_node, InstanceList instances, int pattern_length,
+                                 int wildcard_count, EnumerationContext context){
 
-        return max_num_of_diff_instances;
+        int num_of_diff_instances = -1;
+
+        if (data_tree.getCount_by_keys(data_edge) >= q1) {
+
+            if (alpha == utils.UNK_CHAR_INDEX) {
+                if (q1 == 0 && !startsWith(context.pattern, pattern_length, "X")) {
+                    spellPatternsVirtually(pattern_node, data_node, data_edge_index + 1, data_edge,
+                            pattern_length, wildcard_count, context);
+                }
+            } else if (isInShard(pattern_length, alpha)) {
+
+                PatternNode target_node = new PatternNode(TreeType.VIRTUAL);
+                target_node.setKey(++context.last_pattern_key);
+
+                num_of_diff_instances = extendPattern(alpha, data_edge_index + 1, data_node, data_edge,
+                        wildcard_count, target_node, pattern_node, instances, pattern_length, context);
+            }
+        }
+        return num_of_diff_instances;
+    }
+
+    /**
+     * @param pattern_length the length of the pattern that is extended by alpha
+     * @param alpha
+     * @return false if the extended pattern starts with a char of another shard, and is not enumerated
+     */
+    private boolean isInShard(int pattern_length, int alpha) {
+        return pattern_length > 0 || first_chars == null || first_chars.get(alpha);
+    }
+
+    /**
+     * Pops the frames of a cancelled traversal of context.stack down to base. The chars of the extensions of the empty
+     * pattern whose frames are popped, and of the outgoing edges that the empty pattern was not extended by yet, are
+     * marked as unexplored
+     * @return -1, the result of a cancelled traversal is not used
+     */
+    private int cancelTraversal(EnumerationStack stack, int base, EnumerationContext context) {
+        while (stack.size() > base) {
+            EnumerationStack.Frame frame = stack.peek();
+            if (frame.is_extension) {
+                if (frame.pattern_length == 1) {
+                    markUnexplored(context.pattern[0]);
+                }
+            }else if (frame.pattern_length == 0) {
+                if (frame.data_edge == FlatSuffixTree.NONE) {
+                    markUnexploredEdges(frame.next_data_edge, frame.end_data_edge);
+                }else if (!frame.data_edge_extended) {
+                    markUnexplored(data_tree.getLabelChar(frame.data_edge, frame.data_edge_index));
+                }
+            }
+            stack.pop();
+        }
+        return -1;
+    }
+
+    /**
+     * Marks the first chars of the outgoing edges of the data tree root from data_edge up to end_data_edge (excluded)
+     * as unexplored, except for edges that are not extended
+     */
+    private void markUnexploredEdges(int data_edge, int end_data_edge) {
+        for (; data_edge != end_data_edge; data_edge = data_tree.getNextSibling(data_edge)) {
+            if (data_tree.getCount_by_keys(data_edge) >= q1) {
+                markUnexplored(data_tree.getLabelChar(data_edge, 0));
+            }
+        }
+    }
+
+    /**
+     * @param alpha the first char of patterns that were not enumerated because the enumeration was cancelled
+     */
+    private void markUnexplored(int alpha) {
+        if (alpha == wildcard_char || (alpha == utils.UNK_CHAR_INDEX && q1 > 0) || !isInShard(0, alpha)) {
+            return;
+        }
+        synchronized (unexplored_chars) {
+            unexplored_chars.set(alpha);
+        }
     }
 
-    private void handlePattern(Pattern new_pattern, String extended_pattern){
-        if (memory_saving_mode){
+    private void handlePattern(Pattern new_pattern, EnumerationContext context){
+        context.count(EnumerationMetrics.Counter.PATTERNS);
+        if (top_patterns != null) {
             new_pattern.calculateScore(utils, max_insertion, max_error, max_deletion);
-            new_pattern.calculateMainFunctionalCategory(utils, non_directons);
-            writer.printPattern(new_pattern, utils);
+            top_patterns.offer(new_pattern);
+        }else if (memory_saving_mode && checkpoint == null){
+            if (context.hasPatternConsumer()) {
+                pattern_pipeline.submit(new_pattern);
+            }else {
+                //the keys of a forked task are only known once it is merged into the context of the enumeration,
+                //which passes its patterns to the pattern pipeline in the order a sequential run finds them
+                context.patterns.add(new_pattern);
+            }
         }else {
-            patterns.put(extended_pattern, new_pattern);
+            context.patterns.add(new_pattern);
         }
     }
 
 
+    /**
+     * The patterns in the subtree of pattern_node are at least as long as its pattern and have at most its genomes.
+     * If q1 > 0 they have an exact instance, that extends an exact instance of the pattern of pattern_node, so their
+     * length is bounded by max_string_depths of the exact instances
+     *
+     * @param pattern_node
+     * @param pattern_length
+     * @return false if no pattern in the subtree of pattern_node can be one of the top patterns
+     */
+    private boolean canContainTopPattern(PatternNode pattern_node, int pattern_length) {
+        if (top_patterns.getMinScore() == Double.NEGATIVE_INFINITY) {
+            return true;
+        }
+
+        int max_exact_length = Integer.MAX_VALUE;
+        if (q1 > 0) {
+            max_exact_length = 0;
+            InstanceList instances = pattern_node.getInstances();
+            for (int i = 0; i < instances.size(); i++) {
+                if (instances.getError(i) == 0 && instances.getDeletions(i) == 0 && instances.getInsertions(i) == 0) {
+                    max_exact_length = Math.max(max_exact_length, max_string_depths[instances.getSubtreeNode(i)]);
+                }
+            }
+        }
+        return canContainTopPattern(pattern_length, max_exact_length, pattern_node.getInstanceKeysSize());
+    }
+
+    /**
+     * @param pattern_length
+     * @param max_exact_length the patterns in the subtree are at most this long
+     * @param keys the patterns in the subtree have at most this number of genomes
+     * @return false if no pattern in the subtree of a pattern can be one of the top patterns
+     */
+    private boolean canContainTopPattern(int pattern_length, int max_exact_length, int keys) {
+        double min_score = top_patterns.getMinScore();
+        if (min_score == Double.NEGATIVE_INFINITY) {
+            return true;
+        }
+        int max_length = Math.min(max_top_pattern_length, max_exact_length);
+        return utils.computeMaxPatternScore(Math.max(pattern_length, min_pattern_length), max_length, keys)
+                >= min_score;
+    }
+
     /**
      * Extend pattern recursively by one character, if it passes the q1 and q2 - add to pattern list
      *
      * @param alpha                the char to append
      * @param wildcard_count how many wildcard in the pattern
-     * @param pattern                previous pattern string, before adding alpha. i.e. COG1234|COG2000|
      * @param target_node          node the extended pattern
      * @param pattern_node           node of pattern
      * @param Instances            the instances of pattern
-     * @param pattern_length
+     * @param pattern_length the pattern before adding alpha is context.pattern[0:pattern_length]
+     * @param context collects the patterns that are found
      * @return num of different instances of extended pattern
      */
 
-    private int extendPattern(int alpha, int data_edge_index, InstanceNode data_node, Edge data_edge,
-                              int wildcard_count, String pattern, PatternNode target_node,
-                              PatternNode pattern_node, List<Instance> Instances, int pattern_length) {
+    private int extendPattern(int alpha, int data_edge_index, int data_node, int data_edge,
+                              int wildcard_count, PatternNode target_node,
+                              PatternNode pattern_node, InstanceList Instances, int pattern_length,
+                              EnumerationContext context) {
 
-        String extended_pattern = appendChar(pattern, alpha);
+        PatternNode extended_pattern_node = extendInstances(alpha, wildcard_count, target_node, pattern_node,
+                Instances, pattern_length, context);
+        int diff_instances_count = getDiffInstancesCount(extended_pattern_node);
+        int extended_pattern_length = pattern_length + 1;
+
+        if (!canExtend(extended_pattern_node, alpha, diff_instances_count, extended_pattern_length, wildcard_count,
+                context)) {
+            return diff_instances_count;
+        }
+
+        int ret;
+        if (extended_pattern_node.getType() == TreeType.VIRTUAL){
+            ret = spellPatternsVirtually(extended_pattern_node, data_node, data_edge_index, data_edge,
+                    extended_pattern_length, wildcard_count, context);
+        }else {
+            ret = spellPatterns(extended_pattern_node, extended_pattern_length, wildcard_count, context);
+        }
+
+        return finishExtension(extended_pattern_node, alpha, diff_instances_count, ret, extended_pattern_length,
+                wildcard_count, context);
+    }
+
+    /**
+     * Extends the instances of the pattern by alpha, and writes alpha to context.pattern[pattern_length]
+     *
+     * @param alpha the char to append
+     * @param wildcard_count how many wildcard in the pattern
+     * @param target_node node the extended pattern
+     * @param pattern_node node of pattern
+     * @param Instances the instances of pattern
+     * @param pattern_length the pattern before adding alpha is context.pattern[0:pattern_length]
+     * @param context
+     * @return the node of the extended pattern, target_node or a copy of it
+     */
+    private PatternNode extendInstances(int alpha, int wildcard_count, PatternNode target_node,
+                                        PatternNode pattern_node, InstanceList Instances, int pattern_length,
+                                        EnumerationContext context) {
+
+        context.setPatternChar(pattern_length, alpha);
         PatternNode extended_pattern_node = target_node;
         int extended_pattern_length = pattern_length + 1;
 
@@ -425,73 +1343,129 @@ public class CSBFinder {
             pattern_node.addTargetNode(alpha, extended_pattern_node);
         }
 
-        extended_pattern_node.setSubstring(extended_pattern);
         extended_pattern_node.setSubstring_length(extended_pattern_length);
 
+        //The extensions of an instance are in the subtree of its node, so the keys that the extended pattern can reach
+        //are at most the keys of the extensions of the instances that were extended, plus the keys of the nodes of the
+        //remaining instances. Stop once this bound is below q2, the extended pattern cannot pass the quorum
+        int remaining_keys_bound = 0;
+        if (!mult_count) {
+            for (int i = 0; i < Instances.size(); i++) {
+                remaining_keys_bound += data_tree.getCount_by_keys(Instances.getSubtreeNode(i));
+            }
+        }
+        int extended_keys_bound = 0;
+
         int exact_instances_count = 0;
         //go over all instances of the pattern
-        for (Instance instance : Instances) {
-            int curr_exact_instance_count = extendInstance(extended_pattern_node, instance, alpha);
+        for (int i = 0; i < Instances.size(); i++) {
+            int instance_keys = data_tree.getCount_by_keys(Instances.getSubtreeNode(i));
+            int keys_sum = extended_pattern_node.getInstanceKeysSum();
+
+            int curr_exact_instance_count = extendInstance(extended_pattern_node, Instances.getNode(i),
+                    Instances.getEdge(i), Instances.getEdgeIndex(i), Instances.getError(i), Instances.getDeletions(i),
+                    Instances.getInsertions(i), Instances.getLength(i), alpha, context);
             if (curr_exact_instance_count > 0){
                 exact_instances_count = curr_exact_instance_count;
             }
+
+            if (!mult_count) {
+                remaining_keys_bound -= instance_keys;
+                extended_keys_bound += Math.min(instance_keys, extended_pattern_node.getInstanceKeysSum() - keys_sum);
+                if (extended_keys_bound + remaining_keys_bound < q2) {
+                    context.count(EnumerationMetrics.Counter.PRUNED_QUORUM_BOUND);
+                    break;
+                }
+            }
         }
         extended_pattern_node.setExact_instance_count(exact_instances_count);
+        return extended_pattern_node;
+    }
 
-        int diff_instances_count;
+    /**
+     * @param extended_pattern_node
+     * @return the number of different instances of the pattern, that is compared to q2
+     */
+    private int getDiffInstancesCount(PatternNode extended_pattern_node) {
         if (mult_count){
-            diff_instances_count = extended_pattern_node.getInstanceIndexCount();
-        }else {
-            diff_instances_count = extended_pattern_node.getInstanceKeysSize();
+            return extended_pattern_node.getInstanceIndexCount();
         }
+        return extended_pattern_node.getInstanceKeysSize();
+    }
 
-        if (exact_instances_count >= q1 && diff_instances_count >= q2 &&
-                (extended_pattern_length - wildcard_count <= max_pattern_length)) {
+    /**
+     * @return true if the subtree of the extended pattern should be traversed: it passes q1, q2 and the maximal
+     * length, and in top mode, it can contain one of the top patterns
+     */
+    private boolean canExtend(PatternNode extended_pattern_node, int alpha, int diff_instances_count,
+                              int extended_pattern_length, int wildcard_count, EnumerationContext context) {
+        if (extended_pattern_node.getExact_instance_count() < q1 || diff_instances_count < q2 ||
+                extended_pattern_length - wildcard_count > max_pattern_length) {
+            context.count(EnumerationMetrics.Counter.PRUNED_QUORUM);
+            return false;
+        }
+        //the result of a wildcard extension is the number of instances of its subtree, so it is always traversed
+        if (top_patterns != null && alpha != wildcard_char &&
+                !canContainTopPattern(extended_pattern_node, extended_pattern_length)) {
+            context.count(EnumerationMetrics.Counter.PRUNED_TOP_BOUND);
+            return false;
+        }
+        return true;
+    }
 
-            TreeType type = extended_pattern_node.getType();
-            int ret;
-            if (type == TreeType.VIRTUAL){
-                ret = spellPatternsVirtually(extended_pattern_node, data_node, data_edge_index, data_edge,
-                        extended_pattern, extended_pattern_length, wildcard_count);
-            }else {
-                ret = spellPatterns(extended_pattern_node, extended_pattern, extended_pattern_length, wildcard_count);
+    /**
+     * Called once the subtree of the extended pattern was traversed, adds the extended pattern to the patterns if it
+     * is long enough and right maximal
+     *
+     * @param extended_pattern_node
+     * @param alpha the last char of the extended pattern
+     * @param diff_instances_count the number of different instances of the extended pattern
+     * @param ret the result of the traversal of the subtree of the extended pattern
+     * @param extended_pattern_length the extended pattern is context.pattern[0:extended_pattern_length]
+     * @param wildcard_count
+     * @param context
+     * @return num of different instances of extended pattern
+     */
+    private int finishExtension(PatternNode extended_pattern_node, int alpha, int diff_instances_count, int ret,
+                                int extended_pattern_length, int wildcard_count, EnumerationContext context) {
+        if (cancellation.isCancelled()) {
+            //the subtree may not have been traversed to the end, it is not known if the pattern is right maximal
+            if (extended_pattern_length == 1) {
+                markUnexplored(alpha);
             }
+            return diff_instances_count;
+        }
+        TreeType type = extended_pattern_node.getType();
+        if (extended_pattern_length - wildcard_count >= min_pattern_length) {
+            if (type == TreeType.STATIC) {
+                if (extended_pattern_node.getPatternKey()>0) {
+                    Pattern new_pattern = createPattern(extended_pattern_node, context.pattern,
+                            extended_pattern_length);
 
-            if (extended_pattern_length - wildcard_count >= min_pattern_length) {
-                if (type == TreeType.STATIC) {
-                    if (extended_pattern_node.getPatternKey()>0) {
-                        Pattern new_pattern = new Pattern(extended_pattern_node.getPatternKey(), extended_pattern,
-                                extended_pattern.split(DELIMITER), extended_pattern_length,
-                                extended_pattern_node.getInstanceKeys(), extended_pattern_node.getInstances(),
-                                extended_pattern_node.getExact_instance_count());
-
-                        handlePattern(new_pattern, extended_pattern);
+                    handlePattern(new_pattern, context);
 
-                    }
-                } else if (type == TreeType.VIRTUAL) {
-                    if (alpha != wildcard_char) {
-                        if (!(starts_with_wildcard(extended_pattern))) {
-                            //make sure that extended_pattern is right maximal, if extended_pattern has the same number of
-                            // instances as the longer pattern, prefer the longer pattern
-                            if (diff_instances_count > ret || debug) {// diff_instances_count >= ret always
-                                Pattern new_pattern = new Pattern(extended_pattern_node.getPatternKey(), extended_pattern,
-                                        extended_pattern.split(DELIMITER), extended_pattern_length,
-                                        extended_pattern_node.getInstanceKeys(), extended_pattern_node.getInstances(),
-                                        extended_pattern_node.getExact_instance_count());
-
-                                handlePattern(new_pattern, extended_pattern);
-
-                                if (debug && (getPatternsCount() % 5000 == 0) ){
-                                    utils.measureMemory();
-                                }
+                }
+            } else if (type == TreeType.VIRTUAL) {
+                if (alpha != wildcard_char) {
+                    if (!startsWith(context.pattern, extended_pattern_length, utils.WC_CHAR)) {
+                        //make sure that extended_pattern is right maximal, if extended_pattern has the same number of
+                        // instances as the longer pattern, prefer the longer pattern
+                        if (diff_instances_count > ret || debug) {// diff_instances_count >= ret always
+                            Pattern new_pattern = createPattern(extended_pattern_node, context.pattern,
+                                    extended_pattern_length);
+
+                            handlePattern(new_pattern, context);
+
+                            if (debug && (context.patterns.size() % 5000 == 0) ){
+                                utils.measureMemory();
                             }
                         }
+                    }
+                } else {
+                    if (ret <= 0) {
+                        diff_instances_count = -1;
                     } else {
-                        if (ret <= 0) {
-                            diff_instances_count = -1;
-                        } else {
-                            diff_instances_count = ret;
-                        }
+                        diff_instances_count = ret;
                     }
                 }
             }
@@ -503,120 +1477,116 @@ public class CSBFinder {
      * Extends instance, increments error depending on ch
      *
      * @param extended_pattern extended pattern node
-     * @param instance the current instance
+     * @param node_instance the current instance ends in node_instance, or in the middle of edge_instance
+     * @param edge_instance the node that the edge of the instance enters, FlatSuffixTree.NONE if it ends in node_instance
+     * @param edge_index
+     * @param error
+     * @param deletions
+     * @param insertions
+     * @param length
      * @param ch  the character of the pattern, need to check if the next char on the instance is equal
+     * @param context counts the visited nodes
      * @return list of all possible extended instances
      */
-    private int extendInstance(PatternNode extended_pattern, Instance instance, int ch) {
-        //values of current instance
-        InstanceNode node_instance = instance.getNodeInstance();
-        Edge edge_instance = instance.getEdge();
-        int edge_index = instance.getEdgeIndex();
-        int error = instance.getError();
-        int deletions = instance.getDeletions();
-        int insertions = instance.getInsertions();
-
+    private int extendInstance(PatternNode extended_pattern, int node_instance, int edge_instance, int edge_index,
+                               int error, int deletions, int insertions, int length, int ch,
+                               EnumerationContext context) {
         //values of the extended instance
         int next_edge_index = edge_index;
-        Edge next_edge_instance = edge_instance;
-        InstanceNode next_node_instance = node_instance;
+        int next_edge_instance = edge_instance;
+        int next_node_instance = node_instance;
 
         int exact_instance_count = 0;
 
         //The substring ends at the current node_instance, edge_index = -1
-        if (edge_instance == null) {
+        if (edge_instance == FlatSuffixTree.NONE) {
             //Go over all the edges from node_instance, see if the instance can be extended
-            Map<Integer, Edge> instance_edges = node_instance.getEdges();
 
             //we can extend the instance using all outgoing edges, increment error if needed
             if (ch == wildcard_char) {
-                exact_instance_count = addAllInstanceEdges(false, instance, instance_edges, deletions, error, node_instance,
-                        edge_index, ch, extended_pattern);
+                exact_instance_count = addAllInstanceEdges(false, insertions, length, deletions, error, node_instance,
+                        edge_index, ch, extended_pattern, context);
                 //extend instance by deletions char
                 if (deletions < max_deletion) {
-                    addInstanceToPattern(extended_pattern, instance, gap_char, node_instance, edge_instance, edge_index,
-                            error, deletions + 1);
+                    addInstanceToPattern(extended_pattern, node_instance, edge_instance, edge_index,
+                            error, deletions + 1, insertions, length, context);
                 }
             } else {
-                if (insertions < max_insertion && instance.getLength() > 0){
-                    addAllInstanceEdges(true, instance, instance_edges, deletions, error, node_instance,
-                            edge_index, ch, extended_pattern);
+                if (insertions < max_insertion && length > 0){
+                    addAllInstanceEdges(true, insertions, length, deletions, error, node_instance,
+                            edge_index, ch, extended_pattern, context);
                 }
                 if (error < max_error) {
                     //go over all outgoing edges
-                    exact_instance_count = addAllInstanceEdges(false, instance, instance_edges, deletions,
-                            error, node_instance, edge_index, ch, extended_pattern);
+                    exact_instance_count = addAllInstanceEdges(false, insertions, length, deletions,
+                            error, node_instance, edge_index, ch, extended_pattern, context);
                     //extend instance by deletions char
                     if (deletions < max_deletion) {
-                        addInstanceToPattern(extended_pattern, instance, gap_char, node_instance, edge_instance, edge_index,
-                                error, deletions + 1);
+                        addInstanceToPattern(extended_pattern, node_instance, edge_instance, edge_index,
+                                error, deletions + 1, insertions, length, context);
                     }
                 } else {//error = max error, only edge_instance starting with ch can be added, or deletions
                     next_edge_index++;
-                    next_edge_instance = node_instance.getEdge(ch);
+                    next_edge_instance = data_tree.getChild(node_instance, ch);
                     next_node_instance = node_instance;
                     //Exists an edge_instance starting with ch, add it to instances
-                    if (next_edge_instance != null) {
-                        exact_instance_count = ((InstanceNode)next_edge_instance.getDest()).getCount_by_keys();
+                    if (next_edge_instance != FlatSuffixTree.NONE) {
+                        exact_instance_count = data_tree.getCount_by_keys(next_edge_instance);
                         //The label contains only 1 char, go to next node_instance
-                        if (next_edge_instance.getLabel().get_length() == 1) {
-                            next_node_instance = (InstanceNode) next_edge_instance.getDest();
-                            next_edge_instance = null;
+                        if (data_tree.getLabelLength(next_edge_instance) == 1) {
+                            next_node_instance = next_edge_instance;
+                            next_edge_instance = FlatSuffixTree.NONE;
                             next_edge_index = -1;
                         }
-                        addInstanceToPattern(extended_pattern, instance, ch, next_node_instance, next_edge_instance,
-                                next_edge_index, error, deletions);
+                        addInstanceToPattern(extended_pattern, next_node_instance, next_edge_instance,
+                                next_edge_index, error, deletions, insertions, length, context);
                     } else {
                         //extend instance by deletions char
                         if (deletions < max_deletion) {
-                            addInstanceToPattern(extended_pattern, instance, gap_char, node_instance, edge_instance,
-                                    edge_index, error, deletions + 1);
+                            addInstanceToPattern(extended_pattern, node_instance, edge_instance,
+                                    edge_index, error, deletions + 1, insertions, length, context);
                         }
                     }
                 }
             }
         } else {//Edge is not null, the substring ends at the middle of the edge_instance, at index edge_index
-            WordArray label = edge_instance.getLabel();
             //check the next char on the label, at edge_index+1
             next_edge_index++;
-            int next_ch = label.get_index(next_edge_index);
+            int next_ch = data_tree.getLabelChar(edge_instance, next_edge_index);
 
             //If we reached the end of the label by incrementing edge_index, get next node_instance
-            if (next_edge_index == label.get_length() - 1) {
-                next_node_instance = (InstanceNode) edge_instance.getDest();
-                next_edge_instance = null;
+            if (next_edge_index == data_tree.getLabelLength(edge_instance) - 1) {
+                next_node_instance = edge_instance;
+                next_edge_instance = FlatSuffixTree.NONE;
                 next_edge_index = -1;
             }
 
-            if (insertions < max_insertion && instance.getLength() > 0){
+            if (insertions < max_insertion && length > 0){
                 if (next_ch != ch) {
-                    String extended_instance_string = appendChar(instance.getSubstring(), next_ch);
-                    Instance next_instance = new Instance(next_node_instance, next_edge_instance, next_edge_index,
-                            error, deletions, instance.getInsertionIndexes(), extended_instance_string, instance.getLength() + 1);
-                    next_instance.addInsertionIndex(instance.getLength());
-                    next_instance.addAllInsertionIndexes(instance.getInsertionIndexes());
-                    extendInstance(extended_pattern, next_instance, ch);
-                    count_nodes_in_data_tree++;
+                    extendInstance(extended_pattern, next_node_instance, next_edge_instance, next_edge_index,
+                            error, deletions, insertions + 1, length + 1, ch, context);
+                    context.count_nodes_in_data_tree++;
                 }
             }
 
             //if the char is equal add anyway
             if (next_ch == ch) {
-                exact_instance_count = ((InstanceNode)edge_instance.getDest()).getCount_by_keys();
-                addInstanceToPattern(extended_pattern, instance, next_ch, next_node_instance, next_edge_instance, next_edge_index, error,
-                        deletions);
+                exact_instance_count = data_tree.getCount_by_keys(edge_instance);
+                addInstanceToPattern(extended_pattern, next_node_instance, next_edge_instance, next_edge_index, error,
+                        deletions, insertions, length, context);
             } else {
                 if (ch == wildcard_char) {
-                    addInstanceToPattern(extended_pattern, instance, next_ch, next_node_instance, next_edge_instance, next_edge_index, error,
-                            deletions);
+                    addInstanceToPattern(extended_pattern, next_node_instance, next_edge_instance, next_edge_index, error,
+                            deletions, insertions, length, context);
                 } else {
                     if (error < max_error) {//check if the error is not maximal, to add not equal char
-                        addInstanceToPattern(extended_pattern, instance, next_ch, next_node_instance, next_edge_instance, next_edge_index,
-                                error + 1, deletions);
+                        addInstanceToPattern(extended_pattern, next_node_instance, next_edge_instance, next_edge_index,
+                                error + 1, deletions, insertions, length, context);
                     }
                     //extend instance by deletions char
                     if (deletions < max_deletion) {
-                        addInstanceToPattern(extended_pattern, instance, gap_char, node_instance, edge_instance, edge_index, error, deletions + 1);
+                        addInstanceToPattern(extended_pattern, node_instance, edge_instance, edge_index, error,
+                                deletions + 1, insertions, length, context);
                     }
                 }
             }
@@ -630,18 +1600,19 @@ public class CSBFinder {
     /**
      * Go over all outgoing edges of instance node
      *
-     * @param instance
-     * @param instance_edges  edge set of instance_node
+     * @param insertions insertions of the instance
+     * @param length length of the instance
      * @param deletions
      * @param error
      * @param instance_node
      * @param edge_index
      * @param ch
      * @param patternNode
+     * @param context counts the visited nodes
      */
-    private int addAllInstanceEdges(Boolean make_insertion, Instance instance, Map<Integer, Edge> instance_edges,
-                                    int deletions, int error, InstanceNode instance_node, int edge_index, int ch,
-                                    PatternNode patternNode) {
+    private int addAllInstanceEdges(Boolean make_insertion, int insertions, int length,
+                                    int deletions, int error, int instance_node, int edge_index, int ch,
+                                    PatternNode patternNode, EnumerationContext context) {
         int curr_error = error;
         int next_edge_index;
         int exact_instance_count = 0;
@@ -649,14 +1620,15 @@ public class CSBFinder {
         //boolean exist_equal_char = false;
 
         //go over all outgoing edges
-        for (Map.Entry<Integer, Edge> entry : instance_edges.entrySet()) {
-            int next_ch = entry.getKey();
-            Edge next_edge = entry.getValue();
-            InstanceNode next_node = instance_node;
+        for (int child = data_tree.getFirstChild(instance_node); child != FlatSuffixTree.NONE;
+             child = data_tree.getNextSibling(child)) {
+            int next_ch = data_tree.getLabelChar(child, 0);
+            int next_edge = child;
+            int next_node = instance_node;
 
             if (ch == next_ch) {
                 curr_error = error;
-                exact_instance_count = ((InstanceNode)next_edge.getDest()).getCount_by_keys();
+                exact_instance_count = data_tree.getCount_by_keys(child);
             } else {
                 if (ch != wildcard_char) {//Substitution - the chars are different, increment error
                     curr_error = error + 1;
@@ -664,9 +1636,9 @@ public class CSBFinder {
             }
 
             //The label contains only 1 char, go to next instance_node
-            if (next_edge.getLabel().get_length() == 1) {
-                next_node = (InstanceNode) next_edge.getDest();
-                next_edge = null;
+            if (data_tree.getLabelLength(child) == 1) {
+                next_node = child;
+                next_edge = FlatSuffixTree.NONE;
                 next_edge_index = -1;
             } else {//label contains more the 1 char, increment edge_index
                 next_edge_index = edge_index + 1;
@@ -674,40 +1646,44 @@ public class CSBFinder {
 
             if (make_insertion) {
                 if (ch != next_ch) {
-                    String extended_instance_string = appendChar(instance.getSubstring(), next_ch);
-                    Instance next_instance = new Instance(next_node, next_edge, next_edge_index, error, deletions,
-                            instance.getInsertionIndexes(), extended_instance_string, instance.getLength() + 1);
-                    next_instance.addInsertionIndex(instance.getLength());
-                    extendInstance(patternNode, next_instance, ch);
-                    count_nodes_in_data_tree++;
+                    extendInstance(patternNode, next_node, next_edge, next_edge_index, error, deletions,
+                            insertions + 1, length + 1, ch, context);
+                    context.count_nodes_in_data_tree++;
                 }
             } else {
-                addInstanceToPattern(patternNode, instance, next_ch, next_node, next_edge, next_edge_index, curr_error, deletions);
+                addInstanceToPattern(patternNode, next_node, next_edge, next_edge_index, curr_error, deletions,
+                        insertions, length, context);
             }
         }
         return exact_instance_count;
     }
 
     /**
+     * Adds the extension of an instance to extended_pattern
+     *
      * @param extended_pattern
-     * @param instance
-     * @param next_ch
      * @param next_node
-     * @param next_edge
+     * @param next_edge the node that the edge of the instance enters, FlatSuffixTree.NONE if it ends in next_node
      * @param next_edge_index
      * @param next_error
      * @param next_deletions
+     * @param insertions insertions of the instance
+     * @param length length of the instance, before the extension
+     * @param context counts the visited nodes
      * @throws Exception
      */
-    private void addInstanceToPattern(PatternNode extended_pattern, Instance instance, int next_ch, InstanceNode next_node,
-                                      Edge next_edge, int next_edge_index, int next_error, int next_deletions) {
+    private void addInstanceToPattern(PatternNode extended_pattern, int next_node, int next_edge, int next_edge_index,
+                                      int next_error, int next_deletions, int insertions, int length,
+                                      EnumerationContext context) {
 
-        String extended_instance_string = appendChar(instance.getSubstring(), next_ch);
-        Instance next_instance = new Instance(next_node, next_edge, next_edge_index, next_error, next_deletions,
-                instance.getInsertionIndexes(), extended_instance_string, instance.getLength()+1);
-        extended_pattern.addInstance(next_instance, max_insertion);
+        if (extended_pattern.addInstance(data_tree, next_node, next_edge, next_edge_index, next_error, next_deletions,
+                insertions, length + 1)) {
+            context.count(EnumerationMetrics.Counter.INSTANCES);
+        }else {
+            context.count(EnumerationMetrics.Counter.PRUNED_DOMINATED_INSTANCES);
+        }
 
-        count_nodes_in_data_tree++;
+        context.count_nodes_in_data_tree++;
     }
 
 
@@ -718,5 +1694,20 @@ public class CSBFinder {
         return new ArrayList<Pattern>(patterns.values());
     }
 
+    /**
+     * @return the patterns in the order they were found, including patterns that were removed as redundant
+     */
+    List<Pattern> getFoundPatterns() {
+        return found_patterns;
+    }
+
+    /**
+     * @return the first chars of the patterns that were not enumerated because the enumeration was cancelled, empty if
+     * all the patterns were enumerated. The patterns that start with other chars were all found
+     */
+    public BitSet getUnexploredChars() {
+        return (BitSet) unexplored_chars.clone();
+    }
+
 
 }
@@ -91,6 +91,60 @@ public class CommandLineArgs {
     @Parameter(names={"-non-directons"}, description = "If true, segment input sequences directons", order = 13)
     public static boolean non_directons = false;
 
+    @Parameter(names={"-threads"}, description = "Number of threads used for CSB enumeration"
+            , validateWith = CommandLineArgs.PositiveInteger.class, order = 14)
+    public static int num_of_threads = 1;
+
+    @Parameter(names={"-snapshot"}, description = "Data tree snapshot file name. The data tree is read from it if it "
+            + "was built from the same input file, otherwise the data tree is built and saved to it", order = 15)
+    public static String snapshot_file_name = null;
+
+    @Parameter(names={"-top"}, description = "Report at most this number of CSBs. The CSBs with the highest score are "
+            + "chosen before redundant CSBs are removed, so fewer CSBs can be reported. 0 to report all CSBs",
+            validateWith = CommandLineArgs.PositiveInteger.class, order = 16)
+    public static int top = 0;
+
+    @Parameter(names={"-checkpoint"}, description = "Directory that checkpoints of the enumeration are written to. A run "
+            + "that stopped can be resumed from it with -resume", order = 17)
+    public static String checkpoint_dir = null;
+
+    @Parameter(names={"-resume"}, description = "Directory of checkpoints written by a run with the same input and "
+            + "parameters. The enumeration continues from the last checkpoint, and writes its checkpoints to the same "
+            + "directory", order = 18)
+    public static String resume_dir = null;
+
+    @Parameter(names={"-checkpoint-interval"}, description = "Minimal number of seconds between checkpoints"
+            , validateWith = CommandLineArgs.PositiveInteger.class, order = 19)
+    public static int checkpoint_interval = 300;
+
+    @Parameter(names={"-metrics-interval"}, description = "Number of seconds between lines of metrics written to "
+            + "metrics.jsonl in the output directory, 0 to not write metrics. The metrics are also exposed through JMX"
+            , validateWith = CommandLineArgs.PositiveInteger.class, order = 20)
+    public static int metrics_interval = 0;
+
+    @Parameter(names={"-sweep"}, description = "Configurations to report from one run, each to its own output "
+            + "directory. Configurations are separated by ';', each is a comma separated list of parameter=values, "
+            + "with the parameters q, qexact, ins, lmin and lmax, e.g. \"q=5/10/20/50,ins=0/1/2\". Values separated "
+            + "by '/' are swept, parameters that are not given get the values of -q, -qexact, -ins, -lmin and -lmax"
+            , order = 21)
+    public static String sweep = null;
+
+    @Parameter(names={"-workers"}, description = "Number of worker processes that the enumeration is split between, "
+            + "by the first gene family of the CSBs. 0 to enumerate in this process"
+            , validateWith = CommandLineArgs.PositiveInteger.class, order = 22)
+    public static int num_of_workers = 0;
+
+    @Parameter(names={"-timeout"}, description = "Number of seconds after which the enumeration stops, 0 for no limit. "
+            + "The CSBs found until then are written, and the gene families that the CSBs that were not enumerated "
+            + "start with are reported", validateWith = CommandLineArgs.PositiveInteger.class, order = 23)
+    public static int timeout = 0;
+
+    //set by the coordinator of the workers, see EnumerationShards
+    @Parameter(names = "-shard", description = "The shard that this worker enumerates", hidden = true)
+    public static int shard = -1;
+    @Parameter(names = "-shards-dir", description = "Directory of the shards of the workers", hidden = true)
+    public static String shards_dir = null;
+
     @Parameter(names={"--mismatch", "-err"}, description = "Maximal number of mismatches allowed", hidden = true)
     public static int max_error = 0;
     @Parameter(names={"--deletion", "-del"}, description = "Maximal number of deletions allowed", hidden = true)
@@ -0,0 +1,66 @@
+package Main;
+
+/**
+ * Stops an enumeration of CSBFinder before it ends, once it is cancelled or its deadline passes.
+ * The enumeration then ends with the patterns whose subtrees were traversed to the end, and CSBFinder reports the chars
+ * that the patterns it did not enumerate start with, see CSBFinder.getUnexploredChars
+ */
+public class EnumerationCancellation {
+    private volatile boolean cancelled;
+    /**
+     * The deadline by System.nanoTime, used if has_deadline
+     */
+    private final long deadline;
+    private final boolean has_deadline;
+
+    /**
+     * An enumeration that is only stopped by cancel
+     */
+    public EnumerationCancellation(){
+        cancelled = false;
+        deadline = 0;
+        has_deadline = false;
+    }
+
+    /**
+     * @param timeout_seconds the enumeration is stopped timeout_seconds from now
+     */
+    public EnumerationCancellation(long timeout_seconds){
+        cancelled = false;
+        deadline = System.nanoTime() + timeout_seconds * 1000000000L;
+        has_deadline = true;
+    }
+
+    /**
+     * Stops the enumeration, may be called from any thread
+     */
+    public void cancel(){
+        cancelled = true;
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * Cancels if the deadline passed. The enumeration calls it periodically, isCancelled is called far more often
+     * @return true if cancelled
+     */
+    boolean checkDeadline(){
+        if (!cancelled && has_deadline && System.nanoTime() - deadline >= 0) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * @return the number of seconds until the deadline, rounded up, -1 if there is no deadline
+     */
+    long getRemainingSeconds(){
+        if (!has_deadline) {
+            return -1;
+        }
+        long remaining_nanos = Math.max(deadline - System.nanoTime(), 0);
+        return (remaining_nanos + 999999999L) / 1000000000L;
+    }
+}
@@ -0,0 +1,325 @@
+package Main;
+
+import SuffixTrees.FlatSuffixTree;
+import Utils.InstanceList;
+import Utils.Pattern;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A directory that holds the progress of an enumeration, so that a run that stopped can continue from it.
+ *
+ * The enumeration extends the empty pattern by the outgoing edges of the data tree root one after the other. After an
+ * edge is extended, and at least interval seconds passed since the last checkpoint, a checkpoint is written: the
+ * number of root edges that were extended, the keys and counters of the enumeration context, and the patterns that were
+ * found since the last checkpoint (or, in top mode, the patterns that are kept).
+ *
+ * The directory holds:
+ * checkpoint - the state of the last checkpoint, replaced when a new checkpoint is complete
+ * patterns_i - the patterns found between checkpoints i-1 and i, in the order they were found
+ * top_i - the patterns kept in top mode at checkpoint i
+ * Files that the checkpoint file does not refer to are left over from a checkpoint that was not completed, and are
+ * written again.
+ * A checkpoint is only resumed with the same parameters and the same data tree, the node ids in the instances of the
+ * patterns are node ids of the data tree.
+ */
+public class EnumerationCheckpoint {
+    private static final int MAGIC = 0x43534243;
+    private static final int VERSION = 2;
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final File dir;
+    private final String signature;
+    private final long interval_nanos;
+    private long last_write_time;
+
+    /**
+     * The state of the last checkpoint that was written or read
+     */
+    private int checkpoint_count;
+    private int extended_root_edges;
+    private int last_pattern_key;
+    private long count_nodes_in_pattern_tree;
+    private long count_nodes_in_data_tree;
+    /**
+     * Number of patterns_i files, some checkpoints find no patterns and do not write one
+     */
+    private int patterns_files_count;
+    private boolean has_top_patterns;
+
+    private EnumerationCheckpoint(File dir, String signature, int interval_seconds){
+        this.dir = dir;
+        this.signature = signature;
+        interval_nanos = interval_seconds * 1000000000L;
+        last_write_time = System.nanoTime();
+
+        checkpoint_count = 0;
+        extended_root_edges = 0;
+        last_pattern_key = 0;
+        count_nodes_in_pattern_tree = 0;
+        count_nodes_in_data_tree = 0;
+        patterns_files_count = 0;
+        has_top_patterns = false;
+    }
+
+    /**
+     * Creates a checkpoint directory for a new run. A checkpoint that is already in the directory is replaced once the
+     * first checkpoint of this run is written
+     *
+     * @param dir_path
+     * @param interval_seconds minimal time between checkpoints
+     * @param parameters the parameters of the run that affect the patterns it finds
+     * @param data_tree
+     * @return the checkpoint, null if the directory could not be created
+     */
+    public static EnumerationCheckpoint create(String dir_path, int interval_seconds, String parameters,
+                                               FlatSuffixTree data_tree){
+        File dir = new File(dir_path);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.out.println("Could not create checkpoint directory " + dir_path);
+            return null;
+        }
+        return new EnumerationCheckpoint(dir, signature(parameters, data_tree), interval_seconds);
+    }
+
+    /**
+     * Reads the last checkpoint in a directory, new checkpoints of the run are written to the same directory
+     *
+     * @param dir_path
+     * @param interval_seconds minimal time between checkpoints
+     * @param parameters the parameters of the run that affect the patterns it finds
+     * @param data_tree
+     * @return the checkpoint, null if it could not be read, or if it was written with other parameters or data tree
+     */
+    public static EnumerationCheckpoint resume(String dir_path, int interval_seconds, String parameters,
+                                               FlatSuffixTree data_tree){
+        EnumerationCheckpoint checkpoint = new EnumerationCheckpoint(new File(dir_path),
+                signature(parameters, data_tree), interval_seconds);
+
+        File checkpoint_file = new File(checkpoint.dir, CHECKPOINT_FILE);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpoint_file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.out.println(checkpoint_file + " is not a checkpoint");
+                return null;
+            }
+            if (!in.readUTF().equals(checkpoint.signature)) {
+                System.out.println("Checkpoint " + dir_path + " was written with other parameters or input");
+                return null;
+            }
+            checkpoint.checkpoint_count = in.readInt();
+            checkpoint.extended_root_edges = in.readInt();
+            checkpoint.last_pattern_key = in.readInt();
+            checkpoint.count_nodes_in_pattern_tree = in.readLong();
+            checkpoint.count_nodes_in_data_tree = in.readLong();
+            checkpoint.patterns_files_count = in.readInt();
+            checkpoint.has_top_patterns = in.readBoolean();
+        } catch (IOException e) {
+            System.out.println("Could not read checkpoint " + dir_path + ": " + e.getMessage());
+            return null;
+        }
+        return checkpoint;
+    }
+
+    private static String signature(String parameters, FlatSuffixTree data_tree){
+        return parameters + " nodes=" + data_tree.getNumberOfNodes()
+                + " indexes=" + data_tree.getCount_by_indexes(FlatSuffixTree.ROOT)
+                + " root_edges=" + data_tree.getNumberOfChildren(FlatSuffixTree.ROOT);
+    }
+
+    /**
+     * @return true if interval seconds passed since the last checkpoint was written
+     */
+    boolean isDue(){
+        return System.nanoTime() - last_write_time >= interval_nanos;
+    }
+
+    /**
+     * @return the number of outgoing edges of the data tree root that were extended before the checkpoint
+     */
+    int getExtendedRootEdges(){
+        return extended_root_edges;
+    }
+
+    /**
+     * Sets the keys and node counters of context to those of the checkpoint
+     * @param context
+     */
+    void restoreContext(EnumerationContext context){
+        context.last_pattern_key = last_pattern_key;
+        context.setNodeCounts(count_nodes_in_pattern_tree, count_nodes_in_data_tree);
+    }
+
+    /**
+     * Reads the patterns that were found before the checkpoint, by the order they were found
+     * @param data_tree
+     * @param consumer receives the patterns one by one, they are not kept in memory by the checkpoint
+     * @throws IllegalStateException if a patterns file could not be read
+     */
+    void readPatterns(FlatSuffixTree data_tree, Consumer<Pattern> consumer){
+        for (int i = 1; i <= patterns_files_count; i++) {
+            readPatternsFile(new File(dir, "patterns_" + i), data_tree, consumer);
+        }
+    }
+
+    /**
+     * @param data_tree
+     * @return the patterns that were kept in top mode at the checkpoint
+     * @throws IllegalStateException if the file could not be read
+     */
+    List<Pattern> readTopPatterns(FlatSuffixTree data_tree){
+        List<Pattern> patterns = new ArrayList<>();
+        if (has_top_patterns) {
+            readPatternsFile(new File(dir, "top_" + checkpoint_count), data_tree, patterns::add);
+        }
+        return patterns;
+    }
+
+    /**
+     * Writes a checkpoint. A checkpoint that could not be written is reported and skipped, the enumeration goes on and
+     * the next checkpoint includes its patterns
+     *
+     * @param extended_root_edges number of outgoing edges of the data tree root that were extended
+     * @param context the context of the enumeration, after the edges were extended
+     * @param new_patterns patterns found since the last checkpoint
+     * @param top_patterns patterns kept in top mode, null if not in top mode
+     * @return true if the checkpoint was written
+     */
+    boolean write(int extended_root_edges, EnumerationContext context, List<Pattern> new_patterns,
+                  List<Pattern> top_patterns){
+        int new_checkpoint_count = checkpoint_count + 1;
+        int new_patterns_files_count = patterns_files_count;
+        try {
+            if (!new_patterns.isEmpty()) {
+                new_patterns_files_count++;
+                writePatternsFile(new File(dir, "patterns_" + new_patterns_files_count), new_patterns);
+            }
+            if (top_patterns != null) {
+                writePatternsFile(new File(dir, "top_" + new_checkpoint_count), top_patterns);
+            }
+
+            File temp_file = new File(dir, CHECKPOINT_FILE + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp_file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(signature);
+                out.writeInt(new_checkpoint_count);
+                out.writeInt(extended_root_edges);
+                out.writeInt(context.last_pattern_key);
+                out.writeLong(context.count_nodes_in_pattern_tree);
+                out.writeLong(context.count_nodes_in_data_tree);
+                out.writeInt(new_patterns_files_count);
+                out.writeBoolean(top_patterns != null);
+            }
+            Files.move(temp_file.toPath(), new File(dir, CHECKPOINT_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Could not write checkpoint to " + dir + ": " + e.getMessage());
+            return false;
+        }
+
+        if (has_top_patterns) {
+            new File(dir, "top_" + checkpoint_count).delete();
+        }
+        checkpoint_count = new_checkpoint_count;
+        this.extended_root_edges = extended_root_edges;
+        last_pattern_key = context.last_pattern_key;
+        count_nodes_in_pattern_tree = context.count_nodes_in_pattern_tree;
+        count_nodes_in_data_tree = context.count_nodes_in_data_tree;
+        patterns_files_count = new_patterns_files_count;
+        has_top_patterns = top_patterns != null;
+        last_write_time = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Writes patterns with their instances, also used for the patterns of shards, see EnumerationShards
+     * @param file
+     * @param patterns
+     * @throws IOException
+     */
+    static void writePatternsFile(File file, List<Pattern> patterns) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(patterns.size());
+            for (Pattern pattern : patterns) {
+                writePattern(out, pattern);
+            }
+        }
+    }
+
+    /**
+     * @param file written by writePatternsFile
+     * @param data_tree the data tree of the instances of the patterns
+     * @param consumer receives the patterns in the order they were written
+     * @throws IllegalStateException if the file could not be read
+     */
+    static void readPatternsFile(File file, FlatSuffixTree data_tree, Consumer<Pattern> consumer){
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(readPattern(in, data_tree));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read patterns file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void writePattern(DataOutputStream out, Pattern pattern) throws IOException {
+        out.writeInt(pattern.getPatternId());
+        out.writeUTF(pattern.getPattern());
+        String[] pattern_arr = pattern.getPatternArr();
+        out.writeInt(pattern_arr.length);
+        for (String ch : pattern_arr) {
+            out.writeUTF(ch);
+        }
+        out.writeInt(pattern.getLength());
+        out.writeInt(pattern.getInstanceCount());
+        out.writeInt(pattern.getExactInstanceCount());
+
+        InstanceList instances = pattern.get_instances();
+        out.writeInt(instances.size());
+        for (int i = 0; i < instances.size(); i++) {
+            out.writeInt(instances.getNode(i));
+            out.writeInt(instances.getEdge(i));
+            out.writeInt(instances.getEdgeIndex(i));
+            out.writeInt(instances.getError(i));
+            out.writeInt(instances.getDeletions(i));
+            out.writeInt(instances.getInsertions(i));
+            out.writeInt(instances.getLength(i));
+        }
+    }
+
+    private static Pattern readPattern(DataInputStream in, FlatSuffixTree data_tree) throws IOException {
+        int pattern_id = in.readInt();
+        String pattern_str = in.readUTF();
+        String[] pattern_arr = new String[in.readInt()];
+        for (int i = 0; i < pattern_arr.length; i++) {
+            pattern_arr[i] = in.readUTF();
+        }
+        int length = in.readInt();
+        int instance_count = in.readInt();
+        int exact_instance_count = in.readInt();
+
+        //the instances were kept by InstanceList.add when they were found, adding them again keeps all of them
+        InstanceList instances = new InstanceList();
+        int instances_count = in.readInt();
+        for (int i = 0; i < instances_count; i++) {
+            instances.add(data_tree, in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt(), in.readInt());
+        }
+        return new Pattern(pattern_id, pattern_str, pattern_arr, length, instance_count, instances,
+                exact_instance_count);
+    }
+}
@@ -0,0 +1,154 @@
+package Main;
+
+import Utils.Pattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The state of one enumeration task: the keys it gave to nodes of the virtual pattern tree, the patterns it found
+ * (in the order they were found) and its node counters.
+ * A task that runs in parallel to others gets a context of its own, starting from key 0. When the task is done, its
+ * context is merged into the context of the task that forked it, in the same order as a sequential run would have
+ * visited it, so pattern ids and pattern order are the same as in a sequential run.
+ */
+class EnumerationContext {
+
+    int last_pattern_key;
+
+    /**
+     * Patterns found by this task and by the tasks merged into it
+     */
+    final List<Pattern> patterns;
+
+    long count_nodes_in_pattern_tree;
+    long count_nodes_in_data_tree;
+
+    /**
+     * Counts of EnumerationMetrics counters that were not yet added to the metrics, by the ordinal of the counter.
+     * The visited nodes are counted by count_nodes_in_pattern_tree and count_nodes_in_data_tree
+     */
+    private final long[] metric_counts;
+    /**
+     * The part of the node counts that was already added to the metrics
+     */
+    private long published_pattern_nodes;
+    private long published_data_nodes;
+
+    /**
+     * The chars (indexes in utils.index_to_char) of the pattern that is extended by the task. A pattern of length l is
+     * pattern[0:l], the extension of a pattern of length l writes its char to pattern[l], so the chars of the patterns
+     * it was extended from are not overwritten
+     */
+    int[] pattern;
+
+    /**
+     * The frames of spellPatternsVirtually in this task
+     */
+    final EnumerationStack stack;
+
+    /**
+     * If not null, the patterns of the tasks that are merged into this context are passed to it instead of being kept
+     * in patterns
+     */
+    private Consumer<Pattern> pattern_consumer;
+
+    EnumerationContext(){
+        last_pattern_key = 0;
+        patterns = new ArrayList<>();
+        pattern = new int[16];
+        stack = new EnumerationStack();
+        count_nodes_in_pattern_tree = 0;
+        count_nodes_in_data_tree = 0;
+        metric_counts = new long[EnumerationMetrics.Counter.values().length];
+        published_pattern_nodes = 0;
+        published_data_nodes = 0;
+        pattern_consumer = null;
+    }
+
+    /**
+     * Used for the context of the whole enumeration, whose keys are the final pattern ids
+     * @param pattern_consumer receives the merged patterns, in the order a sequential run finds them
+     */
+    void setPatternConsumer(Consumer<Pattern> pattern_consumer){
+        this.pattern_consumer = pattern_consumer;
+    }
+
+    boolean hasPatternConsumer(){
+        return pattern_consumer != null;
+    }
+
+    void count(EnumerationMetrics.Counter counter){
+        metric_counts[counter.ordinal()]++;
+    }
+
+    /**
+     * Adds the counts since the last call to metrics
+     * @param metrics
+     */
+    void publishMetrics(EnumerationMetrics metrics){
+        for (EnumerationMetrics.Counter counter : EnumerationMetrics.Counter.values()) {
+            metrics.add(counter, metric_counts[counter.ordinal()]);
+        }
+        Arrays.fill(metric_counts, 0);
+        metrics.add(EnumerationMetrics.Counter.PATTERN_NODES, count_nodes_in_pattern_tree - published_pattern_nodes);
+        metrics.add(EnumerationMetrics.Counter.DATA_NODES, count_nodes_in_data_tree - published_data_nodes);
+        published_pattern_nodes = count_nodes_in_pattern_tree;
+        published_data_nodes = count_nodes_in_data_tree;
+    }
+
+    /**
+     * Sets the node counters, when the enumeration continues from a checkpoint. The nodes counted before the
+     * checkpoint are not added to the metrics of this run
+     */
+    void setNodeCounts(long count_nodes_in_pattern_tree, long count_nodes_in_data_tree){
+        this.count_nodes_in_pattern_tree = count_nodes_in_pattern_tree;
+        this.count_nodes_in_data_tree = count_nodes_in_data_tree;
+        published_pattern_nodes = count_nodes_in_pattern_tree;
+        published_data_nodes = count_nodes_in_data_tree;
+    }
+
+    void setPatternChar(int index, int ch){
+        if (index == pattern.length) {
+            pattern = Arrays.copyOf(pattern, pattern.length * 2);
+        }
+        pattern[index] = ch;
+    }
+
+    /**
+     * Sets the pattern that a forked task extends
+     * @param prefix
+     */
+    void setPattern(int[] prefix){
+        pattern = Arrays.copyOf(prefix, Math.max(16, prefix.length * 2));
+    }
+
+    /**
+     * Appends the results of a task that was forked from this one.
+     * Keys of the child task are relative to the key this task had when the child was forked, so they are shifted
+     * by the current key of this task.
+     * @param child context of a finished task
+     */
+    void merge(EnumerationContext child){
+        for (Pattern pattern : child.patterns) {
+            pattern.setPatternId(pattern.getPatternId() + last_pattern_key);
+            if (pattern_consumer != null) {
+                pattern_consumer.accept(pattern);
+            }else {
+                patterns.add(pattern);
+            }
+        }
+        last_pattern_key += child.last_pattern_key;
+
+        count_nodes_in_pattern_tree += child.count_nodes_in_pattern_tree;
+        count_nodes_in_data_tree += child.count_nodes_in_data_tree;
+
+        for (int i = 0; i < metric_counts.length; i++) {
+            metric_counts[i] += child.metric_counts[i];
+        }
+        published_pattern_nodes += child.published_pattern_nodes;
+        published_data_nodes += child.published_data_nodes;
+    }
+}
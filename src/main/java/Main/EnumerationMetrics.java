@@ -0,0 +1,242 @@
+package Main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timers of a run, that can be read while the run goes on.
+ *
+ * The enumeration counts in its EnumerationContext, and adds the counts to the metrics once in a while (see
+ * EnumerationContext.publishMetrics), so the counters are not shared by the threads of the enumeration on every count.
+ * The run is split to phases, the duration of each phase is kept once it ends.
+ * The heap high water mark is the sum of the peak usage of the heap memory pools.
+ */
+public class EnumerationMetrics implements EnumerationMetricsMXBean {
+    public static final String OBJECT_NAME = "CSBFinder:type=EnumerationMetrics";
+
+    public enum Counter {
+        PATTERN_NODES("pattern_nodes"),
+        DATA_NODES("data_nodes"),
+        INSTANCES("instances"),
+        PATTERNS("patterns"),
+        /**
+         * Instances that were not added, another instance in the same position has fewer errors
+         */
+        PRUNED_DOMINATED_INSTANCES("pruned_dominated_instances"),
+        /**
+         * Extensions that stopped extending instances, since the keys they could reach are fewer than q2
+         */
+        PRUNED_QUORUM_BOUND("pruned_quorum_bound"),
+        /**
+         * Extensions that did not pass q1, q2 or the maximal pattern length
+         */
+        PRUNED_QUORUM("pruned_quorum"),
+        /**
+         * Subtrees that were not traversed in top mode, since they cannot contain a top pattern
+         */
+        PRUNED_TOP_BOUND("pruned_top_bound");
+
+        private final String name;
+
+        Counter(String name){
+            this.name = name;
+        }
+
+        public String getName(){
+            return name;
+        }
+    }
+
+    private final LongAdder[] counters;
+    private final long start_time;
+
+    private final Map<String, Long> phase_durations;
+    private String phase;
+    private long phase_start_time;
+    /**
+     * Start time of the enumeration phase, 0 before it starts
+     */
+    private volatile long enumeration_start_time;
+    private volatile long enumeration_end_time;
+
+    public EnumerationMetrics(){
+        counters = new LongAdder[Counter.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        start_time = System.nanoTime();
+        phase_durations = new LinkedHashMap<>();
+        phase = "";
+        phase_start_time = start_time;
+        enumeration_start_time = 0;
+        enumeration_end_time = 0;
+    }
+
+    public void add(Counter counter, long count){
+        if (count != 0) {
+            counters[counter.ordinal()].add(count);
+        }
+    }
+
+    public long get(Counter counter){
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * Ends the current phase, if there is one, and starts a new one
+     * @param name
+     */
+    public synchronized void startPhase(String name){
+        endPhase();
+        phase = name;
+        phase_start_time = System.nanoTime();
+    }
+
+    /**
+     * Ends the current phase, and keeps its duration
+     */
+    public synchronized void endPhase(){
+        if (!phase.isEmpty()) {
+            long duration = System.nanoTime() - phase_start_time;
+            phase_durations.merge(phase, duration / 1000000, Long::sum);
+        }
+        phase = "";
+    }
+
+    /**
+     * Marks the start of the enumeration, the rates are computed from it
+     */
+    void startEnumeration(){
+        enumeration_start_time = System.nanoTime();
+        enumeration_end_time = 0;
+    }
+
+    void endEnumeration(){
+        enumeration_end_time = System.nanoTime();
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, instead of metrics of a previous run
+     * @return true if the metrics were registered
+     */
+    public boolean register(){
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.out.println("Could not register metrics: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the values of all metrics, by their names
+     */
+    public Map<String, Object> snapshot(){
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("time_ms", (System.nanoTime() - start_time) / 1000000);
+        values.put("phase", getPhase());
+        for (Counter counter : Counter.values()) {
+            values.put(counter.getName(), get(counter));
+        }
+        values.put("pattern_nodes_per_second", Math.round(getPatternNodesPerSecond()));
+        values.put("heap_used", getHeapUsed());
+        values.put("heap_high_water_mark", getHeapHighWaterMark());
+        values.put("phase_durations_ms", getPhaseDurations());
+        return values;
+    }
+
+    @Override
+    public long getPatternNodes(){
+        return get(Counter.PATTERN_NODES);
+    }
+
+    @Override
+    public long getDataNodes(){
+        return get(Counter.DATA_NODES);
+    }
+
+    @Override
+    public long getInstances(){
+        return get(Counter.INSTANCES);
+    }
+
+    @Override
+    public long getPatterns(){
+        return get(Counter.PATTERNS);
+    }
+
+    @Override
+    public long getPrunedDominatedInstances(){
+        return get(Counter.PRUNED_DOMINATED_INSTANCES);
+    }
+
+    @Override
+    public long getPrunedQuorumBound(){
+        return get(Counter.PRUNED_QUORUM_BOUND);
+    }
+
+    @Override
+    public long getPrunedQuorum(){
+        return get(Counter.PRUNED_QUORUM);
+    }
+
+    @Override
+    public long getPrunedTopBound(){
+        return get(Counter.PRUNED_TOP_BOUND);
+    }
+
+    /**
+     * @return the number of pattern nodes visited per second of the enumeration, 0 before it starts
+     */
+    @Override
+    public double getPatternNodesPerSecond(){
+        long start = enumeration_start_time;
+        if (start == 0) {
+            return 0;
+        }
+        long end = enumeration_end_time;
+        if (end == 0) {
+            end = System.nanoTime();
+        }
+        return end == start ? 0 : getPatternNodes() / ((end - start) / 1e9);
+    }
+
+    @Override
+    public synchronized String getPhase(){
+        return phase;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPhaseDurations(){
+        return new LinkedHashMap<>(phase_durations);
+    }
+
+    @Override
+    public long getHeapUsed(){
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public long getHeapHighWaterMark(){
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
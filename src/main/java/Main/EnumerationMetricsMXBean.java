@@ -0,0 +1,37 @@
+package Main;
+
+import java.util.Map;
+
+/**
+ * The metrics of a run, as exposed through JMX under EnumerationMetrics.OBJECT_NAME
+ */
+public interface EnumerationMetricsMXBean {
+    long getPatternNodes();
+
+    long getDataNodes();
+
+    long getInstances();
+
+    long getPatterns();
+
+    long getPrunedDominatedInstances();
+
+    long getPrunedQuorumBound();
+
+    long getPrunedQuorum();
+
+    long getPrunedTopBound();
+
+    double getPatternNodesPerSecond();
+
+    String getPhase();
+
+    /**
+     * @return the duration in milliseconds of each phase that ended, by the order of the phases
+     */
+    Map<String, Long> getPhaseDurations();
+
+    long getHeapUsed();
+
+    long getHeapHighWaterMark();
+}
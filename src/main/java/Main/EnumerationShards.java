@@ -0,0 +1,206 @@
+package Main;
+
+import SuffixTrees.FlatSuffixTree;
+import Utils.Pattern;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the enumeration between worker processes, by the first char of the patterns.
+ *
+ * Each outgoing edge of the data tree root starts with a different char, so the patterns that start with a char are
+ * found in the subtree of its edge. The chars are assigned to the shards from the edge with the most occurrences to the
+ * edge with the fewest, each to the shard with the fewest occurrences so far. The assignment only depends on the data
+ * tree, so the coordinator and the workers compute it on their own.
+ *
+ * The coordinator starts a worker process for each shard, with the arguments of the run and the shard, and waits for
+ * them. The workers read the data tree from the same snapshot. Worker i writes its output to worker_i/ in the shards
+ * directory, and the patterns it found to shard_i, in the order they were found. If it stopped at the timeout, the
+ * first chars of the patterns that it did not enumerate are listed in worker_i/unexplored.txt. The coordinator reads
+ * the patterns of all the shards in the order of the root edges they start with, which is the order in which a run of
+ * all the shards finds them.
+ */
+class EnumerationShards {
+
+    /**
+     * @param data_tree
+     * @param num_of_shards
+     * @param shard
+     * @return the chars that the patterns of shard start with
+     */
+    static BitSet getFirstChars(FlatSuffixTree data_tree, int num_of_shards, int shard){
+        List<Integer> edges = new ArrayList<>();
+        for (int child = data_tree.getFirstChild(FlatSuffixTree.ROOT); child != FlatSuffixTree.NONE;
+             child = data_tree.getNextSibling(child)) {
+            edges.add(child);
+        }
+        //heaviest edges first, on equal counts by their char
+        edges.sort((edge1, edge2) -> {
+            int compare = Integer.compare(data_tree.getCount_by_indexes(edge2), data_tree.getCount_by_indexes(edge1));
+            if (compare != 0) {
+                return compare;
+            }
+            return Integer.compare(data_tree.getLabelChar(edge1, 0), data_tree.getLabelChar(edge2, 0));
+        });
+
+        long[] shard_occurrences = new long[num_of_shards];
+        BitSet first_chars = new BitSet();
+        for (int edge : edges) {
+            int lightest_shard = 0;
+            for (int i = 1; i < num_of_shards; i++) {
+                if (shard_occurrences[i] < shard_occurrences[lightest_shard]) {
+                    lightest_shard = i;
+                }
+            }
+            shard_occurrences[lightest_shard] += data_tree.getCount_by_indexes(edge);
+            if (lightest_shard == shard) {
+                first_chars.set(data_tree.getLabelChar(edge, 0));
+            }
+        }
+        return first_chars;
+    }
+
+    /**
+     * Starts a worker process for each shard, and waits for all of them to end
+     *
+     * @param shards_dir
+     * @param num_of_shards
+     * @param args the arguments of worker i are args, with every "{shard}" replaced by i
+     * @return true if all the workers ended successfully
+     */
+    static boolean runWorkers(File shards_dir, int num_of_shards, List<String> args){
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        //the workers run with the heap size and options of the coordinator
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+
+        List<Process> workers = new ArrayList<>();
+        boolean success = true;
+        try {
+            for (int shard = 0; shard < num_of_shards; shard++) {
+                List<String> worker_command = new ArrayList<>(command);
+                for (String arg : args) {
+                    worker_command.add(arg.replace("{shard}", String.valueOf(shard)));
+                }
+                File worker_dir = new File(shards_dir, "worker_" + shard);
+                worker_dir.mkdirs();
+                ProcessBuilder builder = new ProcessBuilder(worker_command);
+                builder.redirectErrorStream(true);
+                builder.redirectOutput(new File(worker_dir, "out.log"));
+                workers.add(builder.start());
+            }
+            for (int shard = 0; shard < workers.size(); shard++) {
+                int exit_value = workers.get(shard).waitFor();
+                if (exit_value != 0) {
+                    System.out.println("Worker " + shard + " failed with exit value " + exit_value + ", see "
+                            + new File(new File(shards_dir, "worker_" + shard), "out.log"));
+                    success = false;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not start worker: " + e.getMessage());
+            success = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            success = false;
+        } finally {
+            for (Process worker : workers) {
+                worker.destroy();
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Writes the patterns found by a worker. The file is replaced when it is complete, so the coordinator never reads a
+     * part of it
+     *
+     * @param shards_dir
+     * @param shard
+     * @param patterns the patterns in the order they were found
+     * @return true if the patterns were written
+     */
+    static boolean writeShard(File shards_dir, int shard, List<Pattern> patterns){
+        File shard_file = new File(shards_dir, "shard_" + shard);
+        File temp_file = new File(shards_dir, "shard_" + shard + ".tmp");
+        try {
+            EnumerationCheckpoint.writePatternsFile(temp_file, patterns);
+            Files.move(temp_file.toPath(), shard_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Could not write " + shard_file + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the patterns of all the shards, and deletes their files
+     *
+     * @param shards_dir
+     * @param num_of_shards
+     * @param data_tree the data tree the workers enumerated
+     * @param index_to_char
+     * @return the patterns of the shards, in the order of the root edges they start with, null if a shard could not be
+     * read
+     */
+    static List<Pattern> readShards(File shards_dir, int num_of_shards, FlatSuffixTree data_tree,
+                                    List<String> index_to_char){
+        Map<String, Integer> edge_order = new HashMap<>();
+        for (int child = data_tree.getFirstChild(FlatSuffixTree.ROOT); child != FlatSuffixTree.NONE;
+             child = data_tree.getNextSibling(child)) {
+            edge_order.put(index_to_char.get(data_tree.getLabelChar(child, 0)), edge_order.size());
+        }
+
+        List<Pattern> patterns = new ArrayList<>();
+        for (int shard = 0; shard < num_of_shards; shard++) {
+            File shard_file = new File(shards_dir, "shard_" + shard);
+            try {
+                EnumerationCheckpoint.readPatternsFile(shard_file, data_tree, patterns::add);
+            } catch (IllegalStateException e) {
+                System.out.println(e.getMessage());
+                return null;
+            }
+            shard_file.delete();
+        }
+
+        //the patterns of a shard are in the order they were found, the sort is stable
+        patterns.sort((pattern1, pattern2) -> Integer.compare(
+                edge_order.getOrDefault(pattern1.getPatternArr()[0], Integer.MAX_VALUE),
+                edge_order.getOrDefault(pattern2.getPatternArr()[0], Integer.MAX_VALUE)));
+        return patterns;
+    }
+
+    /**
+     * @param shards_dir
+     * @param num_of_shards
+     * @return the first chars of the patterns that the workers did not enumerate before the timeout, by the order of
+     * the shards
+     */
+    static List<String> readUnexploredChars(File shards_dir, int num_of_shards){
+        List<String> unexplored_chars = new ArrayList<>();
+        for (int shard = 0; shard < num_of_shards; shard++) {
+            File unexplored_file = new File(new File(shards_dir, "worker_" + shard), Main.UNEXPLORED_FILE_NAME);
+            if (!unexplored_file.exists()) {
+                continue;
+            }
+            try {
+                unexplored_chars.addAll(Files.readAllLines(unexplored_file.toPath()));
+            } catch (IOException e) {
+                System.out.println("Could not read " + unexplored_file + ": " + e.getMessage());
+            }
+        }
+        return unexplored_chars;
+    }
+}
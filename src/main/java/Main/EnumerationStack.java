@@ -0,0 +1,101 @@
+package Main;
+
+import SuffixTrees.PatternNode;
+import Utils.InstanceList;
+
+import java.util.Arrays;
+
+/**
+ * The frames of CSBFinder.spellPatternsVirtually and CSBFinder.spellExactPatterns, which traverse the virtual pattern
+ * tree with this stack instead of recursion, so the depth of the traversal is not bounded by the size of the thread
+ * stack.
+ * The frames are reused, a frame is allocated once for each depth that the traversal reaches.
+ */
+class EnumerationStack {
+
+    /**
+     * A node frame is a node of the virtual pattern tree, that extends its pattern by the chars that follow its
+     * instance in the data tree. An extension frame is an extended pattern that waits for the traversal of its subtree
+     * to end, and is right above the node frame of the pattern it extends
+     */
+    static final class Frame {
+        boolean is_extension;
+
+        /**
+         * The pattern node of a node frame, the extended pattern node of an extension frame
+         */
+        PatternNode pattern_node;
+        InstanceList instances;
+        int pattern_length;
+        int wildcard_count;
+
+        //node frame
+        int data_node;
+        int data_edge_index;
+        int data_edge;
+        /**
+         * The next outgoing edge of data_node to extend the pattern by, FlatSuffixTree.NONE once all were extended.
+         * Used if the pattern ends in data_node
+         */
+        int next_data_edge;
+        /**
+         * True once the pattern was extended by the next char of data_edge. Used if the pattern ends in data_edge
+         */
+        boolean data_edge_extended;
+        int max_num_of_diff_instances;
+        /**
+         * True if the frame skips an unknown char of the data tree, its parent does not use its result
+         */
+        boolean ignore_result;
+
+        //extension frame
+        int alpha;
+        int diff_instances_count;
+
+        //frame of CSBFinder.spellExactPatterns, that has no pattern node
+        int pattern_key;
+        /**
+         * The outgoing edge of data_node after the last edge to extend the pattern by, FlatSuffixTree.NONE to extend
+         * it by all the edges
+         */
+        int end_data_edge;
+
+        private void clear(){
+            pattern_node = null;
+            instances = null;
+        }
+    }
+
+    private Frame[] frames;
+    private int size;
+
+    EnumerationStack(){
+        frames = new Frame[16];
+        size = 0;
+    }
+
+    Frame push(){
+        if (size == frames.length) {
+            frames = Arrays.copyOf(frames, size * 2);
+        }
+        Frame frame = frames[size];
+        if (frame == null) {
+            frame = new Frame();
+            frames[size] = frame;
+        }
+        size++;
+        return frame;
+    }
+
+    Frame peek(){
+        return frames[size - 1];
+    }
+
+    void pop(){
+        frames[--size].clear();
+    }
+
+    int size(){
+        return size;
+    }
+}
@@ -0,0 +1,106 @@
+package Main;
+
+import SuffixTrees.FlatSuffixTree;
+import Utils.InstanceList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how the extensions of a pattern are dispatched in a parallel enumeration.
+ *
+ * The cost of extending a pattern by a char is estimated by the number of occurrences of the extended pattern in the
+ * data tree (count_by_indexes of the data tree node below it), weighted by the size of the instance frontier of the
+ * pattern and by the number of insertions each of its instances may still make.
+ * An extension that costs more than the grain is dispatched as a task of its own, and is split again by the task that
+ * runs it. Cheap extensions are batched together until the batch reaches the grain, so that the workers finish at
+ * about the same time instead of one of them grinding on the last large subtree.
+ */
+class ExtensionScheduler {
+    /**
+     * The grain is set so that each thread gets about this number of tasks
+     */
+    private static final int TASKS_PER_THREAD = 16;
+
+    private final FlatSuffixTree data_tree;
+    private final int max_insertion;
+    private final int num_of_threads;
+    private long grain;
+
+    ExtensionScheduler(FlatSuffixTree data_tree, int max_insertion, int num_of_threads){
+        this.data_tree = data_tree;
+        this.max_insertion = max_insertion;
+        this.num_of_threads = num_of_threads;
+        grain = 1;
+    }
+
+    /**
+     * Sets the grain according to the estimated cost of the whole enumeration
+     * @param total_cost estimated cost of extending the root of the pattern tree
+     */
+    void setTotalCost(long total_cost){
+        grain = Math.max(1, total_cost / ((long) num_of_threads * TASKS_PER_THREAD));
+    }
+
+    /**
+     * @param instances the instance frontier of a pattern
+     * @return the weight of the frontier, each instance weighs 1 + the number of insertions it may still make
+     */
+    long frontierWeight(InstanceList instances){
+        long weight = 0;
+        for (int i = 0; i < instances.size(); i++) {
+            weight += 1 + Math.max(0, max_insertion - instances.getInsertions(i));
+        }
+        return weight;
+    }
+
+    /**
+     * @param data_tree_target_node the data tree node below the extended pattern
+     * @param frontier_weight weight of the instance frontier of the pattern
+     * @return the estimated cost of the extension
+     */
+    long estimateCost(int data_tree_target_node, long frontier_weight){
+        return data_tree.getCount_by_indexes(data_tree_target_node) * frontier_weight;
+    }
+
+    /**
+     * @param cost the estimated cost of extending a pattern by all of its chars
+     * @return false if the extensions cannot be split to more than one batch
+     */
+    boolean exceedsGrain(long cost){
+        return cost > grain;
+    }
+
+    /**
+     * Groups consecutive extensions to batches. An extension that is more expensive than the grain gets a batch of
+     * its own, cheap extensions are grouped until their total cost reaches the grain.
+     * @param costs the estimated cost of each extension
+     * @return the batches, each batch is a range [from, to) of indexes in costs
+     */
+    List<int[]> batch(long[] costs){
+        List<int[]> batches = new ArrayList<>();
+        int from = 0;
+        long batch_cost = 0;
+        for (int i = 0; i < costs.length; i++) {
+            if (costs[i] > grain) {
+                if (i > from) {
+                    batches.add(new int[]{from, i});
+                }
+                batches.add(new int[]{i, i + 1});
+                from = i + 1;
+                batch_cost = 0;
+            } else {
+                batch_cost += costs[i];
+                if (batch_cost >= grain) {
+                    batches.add(new int[]{from, i + 1});
+                    from = i + 1;
+                    batch_cost = 0;
+                }
+            }
+        }
+        if (from < costs.length) {
+            batches.add(new int[]{from, costs.length});
+        }
+        return batches;
+    }
+}
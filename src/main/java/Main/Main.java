@@ -1,15 +1,21 @@
 package Main;
 
+import IO.DataTreeSnapshot;
+import IO.MetricsWriter;
 import IO.MyLogger;
 import IO.Readers;
 import IO.Writer;
 import PostProcess.Family;
 import PostProcess.FamilyClustering;
+import SuffixTrees.FlatSuffixTree;
 import SuffixTrees.GeneralizedSuffixTree;
 import SuffixTrees.TreeType;
 import SuffixTrees.Trie;
 import Utils.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -25,8 +31,25 @@ public class Main {
     private Writer writer;
     private Utils utils;
     private String INPUT_PATH = "input/";
+    /**
+     * Lists the gene families that the CSBs that were not enumerated before the timeout start with
+     */
+    static final String UNEXPLORED_FILE_NAME = "unexplored.txt";
+    /**
+     * The configurations of -sweep, null if a single configuration is reported
+     */
+    private List<ParameterSweep.Configuration> sweep_configurations;
+    /**
+     * The arguments of the run, passed on to the workers
+     */
+    private String[] args;
+    /**
+     * Stops the enumeration once the time of -timeout passed, null if there is no limit
+     */
+    private EnumerationCancellation cancellation;
 
     public Main(String [ ] args){
+        this.args = args;
         JCommander jcommander = null;
         try {
             cla = new CommandLineArgs();
@@ -44,11 +67,67 @@ public class Main {
             printUsageAndExit(jcommander, 1);
         }
 
-        output_path = createOutputPath();
+        if (cla.top > 0 && cla.memory_saving_mode) {
+            //the top CSBs are only known at the end of the enumeration, they are kept in memory
+            System.out.println("Memory saving mode is ignored when -top is given");
+            cla.memory_saving_mode = false;
+        }
+
+        if (cla.min_pattern_length < 2) {
+            cla.min_pattern_length = 2 + cla.max_error;
+        }
+
+        sweep_configurations = null;
+        if (cla.sweep != null) {
+            sweep_configurations = ParameterSweep.parse(cla.sweep, new ParameterSweep.Configuration(cla.quorum1,
+                    cla.quorum2, cla.max_insertion, cla.min_pattern_length, cla.max_pattern_length));
+            if (sweep_configurations == null) {
+                System.exit(1);
+            }
+            if (cla.memory_saving_mode) {
+                //the patterns of the run are selected for each configuration, they are kept in memory
+                System.out.println("Memory saving mode is ignored when -sweep is given");
+                cla.memory_saving_mode = false;
+            }
+            if (cla.checkpoint_dir != null || cla.resume_dir != null) {
+                System.out.println("Checkpoints are not written when -sweep is given");
+                cla.checkpoint_dir = null;
+                cla.resume_dir = null;
+            }
+            if (cla.num_of_workers > 0) {
+                System.out.println("-workers is ignored when -sweep is given");
+                cla.num_of_workers = 0;
+            }
+        }
+
+        if (cla.num_of_workers > 0 && cla.memory_saving_mode) {
+            //the patterns of the workers are merged before redundant patterns are removed, they are kept in memory
+            System.out.println("Memory saving mode is ignored when -workers is given");
+            cla.memory_saving_mode = false;
+        }
+
+        if (cla.shard >= 0) {
+            //a worker of a coordinator, its patterns are written to the shards directory
+            output_path = new File(cla.shards_dir, "worker_" + cla.shard).getPath() + "/";
+            Writer.createOutputDirectory(output_path);
+        }else {
+            output_path = createOutputPath();
+            if (cla.num_of_workers > 0) {
+                cla.shards_dir = output_path + "shards/";
+                Writer.createOutputDirectory(cla.shards_dir);
+                if (cla.snapshot_file_name == null) {
+                    //the workers read the data tree that the coordinator builds
+                    cla.snapshot_file_name = cla.shards_dir + "data_tree.snapshot";
+                }
+            }
+        }
         logger = new MyLogger(output_path, cla.debug);
 
         boolean cog_info_exists = (cla.cog_info_file_name != null);
-        writer = createWriter(cog_info_exists);
+        writer = null;
+        if (sweep_configurations == null && cla.shard < 0) {
+            writer = createWriter(cla.max_insertion, cla.quorum2, output_path);
+        }
 
         Map<String, COG> cog_info = null;
 
@@ -58,10 +137,6 @@ public class Main {
 
         utils = new Utils(cog_info, logger);
 
-        if (cla.min_pattern_length < 2) {
-            cla.min_pattern_length = 2 + cla.max_error;
-        }
-
         run();
     }
 
@@ -75,8 +150,15 @@ public class Main {
         new Main(args);
     }
 
-    private Writer createWriter(boolean cog_info_exists){
-        String parameters = "_ins" + cla.max_insertion + "_q" + cla.quorum2;
+    /**
+     * @param max_insertion
+     * @param quorum2
+     * @param output_path the directory of the output files
+     * @return
+     */
+    private Writer createWriter(int max_insertion, int quorum2, String output_path){
+        boolean cog_info_exists = (cla.cog_info_file_name != null);
+        String parameters = "_ins" + max_insertion + "_q" + quorum2;
         String catalog_file_name = "Catalog_" + cla.dataset_name + parameters;
         String instances_file_name = catalog_file_name + "_instances";
         boolean include_families = true;
@@ -84,7 +166,7 @@ public class Main {
             include_families = false;
         }
 
-        Writer writer = new Writer(cla.max_error, cla.max_deletion, cla.max_insertion, cla.debug, catalog_file_name,
+        Writer writer = new Writer(cla.max_error, cla.max_deletion, max_insertion, cla.debug, catalog_file_name,
                 instances_file_name,
                 include_families, cla.output_file_type, cog_info_exists, cla.non_directons, output_path);
 
@@ -138,6 +220,373 @@ public class Main {
         return pattern_tree;
     }
 
+    /**
+     * Reads the input sequences and builds the data tree
+     * @param input_file
+     * @return the data tree, null if the input sequences could not be read
+     */
+    private FlatSuffixTree buildDataTree(File input_file) {
+        GeneralizedSuffixTree dataset_suffix_tree = new GeneralizedSuffixTree();
+
+        logger.writeLogger("Building Data tree");
+        System.out.println("Building Data tree");
+
+        int number_of_genomes = utils.readAndBuildDatasetTree(input_file.getPath(), dataset_suffix_tree,
+                cla.non_directons);
+        if (number_of_genomes == -1) {
+            return null;
+        }
+        //the enumeration runs on a flat copy of the data tree, the GST can be collected once it is copied
+        return new FlatSuffixTree(dataset_suffix_tree);
+    }
+
+    /**
+     * Opens the checkpoint directory given by -resume or -checkpoint. Exits if the checkpoint to resume from could not
+     * be read
+     * @param data_tree
+     * @return the checkpoint, null if no checkpoints are written
+     */
+    private EnumerationCheckpoint openCheckpoint(FlatSuffixTree data_tree){
+        if (cla.resume_dir == null && cla.checkpoint_dir == null) {
+            return null;
+        }
+        if (cla.input_patterns_file_name != null) {
+            System.out.println("Checkpoints are not written when CSBs are given as input");
+            return null;
+        }
+
+        //parameters that change the enumerated patterns
+        String parameters = "in=" + cla.input_file_name + " err=" + cla.max_error + " wc=" + cla.max_wildcards
+                + " del=" + cla.max_deletion + " ins=" + cla.max_insertion + " q1=" + cla.quorum1
+                + " q2=" + cla.quorum2 + " lmin=" + cla.min_pattern_length + " lmax=" + cla.max_pattern_length
+                + " mult=" + cla.mult_count + " non_directons=" + cla.non_directons + " top=" + cla.top;
+        if (cla.shard >= 0) {
+            parameters += " shard=" + cla.shard + "/" + cla.num_of_workers;
+        }
+
+        EnumerationCheckpoint checkpoint;
+        if (cla.resume_dir != null) {
+            checkpoint = EnumerationCheckpoint.resume(cla.resume_dir, cla.checkpoint_interval, parameters, data_tree);
+            if (checkpoint == null) {
+                logger.writeLogger("Could not resume from " + cla.resume_dir);
+                System.exit(1);
+            }
+            logger.writeLogger("Resuming from " + cla.resume_dir);
+            System.out.println("Resuming from " + cla.resume_dir);
+        }else {
+            checkpoint = EnumerationCheckpoint.create(cla.checkpoint_dir, cla.checkpoint_interval, parameters,
+                    data_tree);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Extracts the CSBs of the parameters of the command line, and writes them to the output files
+     * @param data_tree
+     * @param pattern_tree the input patterns, null if patterns are extracted from the data tree
+     * @param number_of_genomes
+     * @param metrics
+     */
+    private void findCSBs(FlatSuffixTree data_tree, Trie pattern_tree, int number_of_genomes,
+                          EnumerationMetrics metrics){
+        EnumerationCheckpoint checkpoint = openCheckpoint(data_tree);
+
+        System.out.println("Extracting CSBs from " + number_of_genomes + " input sequences.");
+        metrics.startPhase("enumerate");
+
+        CSBFinder CSBFinder = new CSBFinder(cla.max_error, cla.max_wildcards, cla.max_deletion, cla.max_insertion,
+                cla.quorum1, cla.quorum2,
+                cla.min_pattern_length, cla.max_pattern_length, utils.GAP_CHAR_INDEX, utils.WC_CHAR_INDEX,
+                data_tree, pattern_tree, cla.mult_count, utils, cla.memory_saving_mode, writer,
+                cla.non_directons, cla.num_of_threads, cla.top, null, checkpoint, metrics, cancellation, cla.debug);
+
+        utils.measureMemory();
+        reportUnexploredChars(getChars(CSBFinder.getUnexploredChars()), output_path);
+
+        if (CSBFinder.getPatternPipeline() != null) {
+            logger.writeLogger(CSBFinder.getPatternPipeline().toString());
+        }
+
+        if (cla.input_patterns_file_name == null) {
+            if (!cla.memory_saving_mode) {
+                System.out.println("Removing redundant CSBs");
+                metrics.startPhase("remove_redundant");
+                logger.writeLogger("CSBs found: " + CSBFinder.getPatternsCount());
+
+                CSBFinder.removeRedundantPatterns();
+                if (cla.debug) {
+                    utils.measureMemory();
+                    logger.writeLogger("CSBs left after removing redundant CSBs: " + CSBFinder.getPatternsCount());
+                }
+            }
+        }
+
+        if (!cla.memory_saving_mode) {
+            metrics.startPhase("score");
+            List<Pattern> patterns = CSBFinder.getPatterns();
+            scorePatterns(patterns, cla.max_insertion);
+            writePatterns(patterns, writer, metrics);
+        }
+        writer.closeFiles();
+
+        System.out.println(writer.getCountPrintedPatterns() + " CSBs found");
+    }
+
+    /**
+     * Extracts the CSBs of each configuration of -sweep, and writes them to a directory of the configuration in the
+     * output directory. Configurations that differ only in q2 and the lengths are selected from the CSBs of one
+     * enumeration, see ParameterSweep
+     * @param data_tree
+     * @param pattern_tree the input patterns, null if patterns are extracted from the data tree
+     * @param number_of_genomes
+     * @param metrics
+     */
+    private void sweep(FlatSuffixTree data_tree, Trie pattern_tree, int number_of_genomes,
+                       EnumerationMetrics metrics){
+        List<List<ParameterSweep.Configuration>> groups = ParameterSweep.group(sweep_configurations, cla.mult_count);
+        logger.writeLogger("Sweeping " + sweep_configurations.size() + " configurations with " + groups.size()
+                + " enumerations");
+
+        for (int i = 0; i < groups.size(); i++) {
+            List<ParameterSweep.Configuration> group = groups.get(i);
+            ParameterSweep.Configuration loosest = ParameterSweep.getLoosest(group);
+            if (i > 0 && pattern_tree != null) {
+                //the instances of the previous enumeration are kept in the pattern tree
+                pattern_tree = buildPatternsTree();
+            }
+
+            System.out.println("Extracting CSBs from " + number_of_genomes + " input sequences for "
+                    + loosest.getName());
+            metrics.startPhase("enumerate");
+
+            CSBFinder CSBFinder = new CSBFinder(cla.max_error, cla.max_wildcards, cla.max_deletion,
+                    loosest.max_insertion, loosest.quorum1, loosest.quorum2,
+                    loosest.min_pattern_length, loosest.max_pattern_length, utils.GAP_CHAR_INDEX, utils.WC_CHAR_INDEX,
+                    data_tree, pattern_tree, cla.mult_count, utils, false, null,
+                    cla.non_directons, cla.num_of_threads, 0, null, null, metrics, cancellation, cla.debug);
+
+            utils.measureMemory();
+            List<String> unexplored_chars = getChars(CSBFinder.getUnexploredChars());
+            logger.writeLogger("CSBs found for " + loosest.getName() + ": " + CSBFinder.getPatternsCount());
+
+            metrics.startPhase("score");
+            //the patterns are selected in the order they were found, so the patterns of a configuration are in the
+            //same order as in a run of the configuration
+            List<Pattern> patterns = CSBFinder.getFoundPatterns();
+            scorePatterns(patterns, loosest.max_insertion);
+
+            for (ParameterSweep.Configuration configuration : group) {
+                metrics.startPhase("remove_redundant");
+                Map<String, Pattern> configuration_patterns = ParameterSweep.select(patterns, configuration,
+                        cla.mult_count);
+
+                String configuration_path = output_path + configuration.getName() + "/";
+                Writer.createOutputDirectory(configuration_path);
+                reportUnexploredChars(unexplored_chars, configuration_path);
+                Writer configuration_writer = createWriter(configuration.max_insertion, configuration.quorum2,
+                        configuration_path);
+                writeCatalog(configuration_patterns, configuration_writer, metrics);
+                configuration_writer.closeFiles();
+
+                logger.writeLogger(configuration.getName() + ": " + configuration_writer.getCountPrintedPatterns()
+                        + " CSBs found");
+                System.out.println(configuration.getName() + ": " + configuration_writer.getCountPrintedPatterns()
+                        + " CSBs found");
+            }
+        }
+    }
+
+    /**
+     * Enumerates the patterns of the shard of this worker, and writes them to the shards directory for the coordinator
+     * @param data_tree
+     * @param pattern_tree the input patterns, null if patterns are extracted from the data tree
+     * @param number_of_genomes
+     * @param metrics
+     */
+    private void findShardCSBs(FlatSuffixTree data_tree, Trie pattern_tree, int number_of_genomes,
+                               EnumerationMetrics metrics){
+        EnumerationCheckpoint checkpoint = openCheckpoint(data_tree);
+        BitSet first_chars = EnumerationShards.getFirstChars(data_tree, cla.num_of_workers, cla.shard);
+
+        System.out.println("Extracting CSBs of shard " + cla.shard + " from " + number_of_genomes
+                + " input sequences.");
+        metrics.startPhase("enumerate");
+
+        CSBFinder CSBFinder = new CSBFinder(cla.max_error, cla.max_wildcards, cla.max_deletion, cla.max_insertion,
+                cla.quorum1, cla.quorum2,
+                cla.min_pattern_length, cla.max_pattern_length, utils.GAP_CHAR_INDEX, utils.WC_CHAR_INDEX,
+                data_tree, pattern_tree, cla.mult_count, utils, false, null,
+                cla.non_directons, cla.num_of_threads, cla.top, first_chars, checkpoint, metrics, cancellation,
+                cla.debug);
+
+        utils.measureMemory();
+        reportUnexploredChars(getChars(CSBFinder.getUnexploredChars()), output_path);
+
+        //redundant patterns are removed by the coordinator, the suffix of a pattern can be in another shard
+        metrics.startPhase("write");
+        List<Pattern> patterns = CSBFinder.getFoundPatterns();
+        if (!EnumerationShards.writeShard(new File(cla.shards_dir), cla.shard, patterns)) {
+            System.exit(1);
+        }
+        System.out.println(patterns.size() + " CSBs found in shard " + cla.shard);
+    }
+
+    /**
+     * Splits the enumeration between worker processes, one for each shard of the first chars of the patterns, merges
+     * the patterns they found and writes them to the output files. See EnumerationShards
+     * @param data_tree the workers read the same data tree from the snapshot
+     * @param number_of_genomes
+     * @param metrics
+     */
+    private void coordinateWorkers(FlatSuffixTree data_tree, int number_of_genomes, EnumerationMetrics metrics){
+        List<String> worker_args = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            worker_args.add(args[i]);
+            //each worker has its own checkpoints
+            if ((args[i].equals("-checkpoint") || args[i].equals("-resume")) && i + 1 < args.length) {
+                worker_args.add(new File(args[++i], "shard_{shard}").getPath());
+            }
+            //the workers stop at the deadline of the coordinator
+            if (args[i].equals("-timeout") && i + 1 < args.length && cancellation != null) {
+                worker_args.add(String.valueOf(Math.max(cancellation.getRemainingSeconds(), 1)));
+                i++;
+            }
+        }
+        if (!worker_args.contains("-snapshot")) {
+            worker_args.add("-snapshot");
+            worker_args.add(cla.snapshot_file_name);
+        }
+        worker_args.add("-shard");
+        worker_args.add("{shard}");
+        worker_args.add("-shards-dir");
+        worker_args.add(cla.shards_dir);
+
+        System.out.println("Extracting CSBs from " + number_of_genomes + " input sequences with "
+                + cla.num_of_workers + " workers.");
+        metrics.startPhase("enumerate");
+        File shards_dir = new File(cla.shards_dir);
+        if (!EnumerationShards.runWorkers(shards_dir, cla.num_of_workers, worker_args)) {
+            logger.writeLogger("Workers failed");
+            System.exit(1);
+        }
+
+        metrics.startPhase("merge");
+        List<Pattern> patterns = EnumerationShards.readShards(shards_dir, cla.num_of_workers, data_tree,
+                utils.index_to_char);
+        if (patterns == null) {
+            System.exit(1);
+        }
+        new File(shards_dir, "data_tree.snapshot").delete();
+        logger.writeLogger("CSBs found: " + patterns.size());
+        reportUnexploredChars(EnumerationShards.readUnexploredChars(shards_dir, cla.num_of_workers), output_path);
+
+        //the keys of the workers are not unique, the patterns are numbered by their order
+        Map<String, Pattern> merged_patterns = new HashMap<>();
+        for (Pattern pattern : patterns) {
+            pattern.setPatternId(merged_patterns.size() + 1);
+            merged_patterns.put(pattern.getPattern(), pattern);
+        }
+        metrics.startPhase("score");
+        scorePatterns(patterns, cla.max_insertion);
+
+        writeCatalog(merged_patterns, writer, metrics);
+        writer.closeFiles();
+
+        System.out.println(writer.getCountPrintedPatterns() + " CSBs found");
+    }
+
+    /**
+     * Keeps the top patterns if -top is given, removes the redundant patterns, and writes the patterns that are left.
+     * The top patterns are chosen before the redundant patterns are removed, so fewer than -top patterns can be written
+     * @param patterns patterns whose score was calculated, by their string
+     * @param writer
+     * @param metrics
+     */
+    private void writeCatalog(Map<String, Pattern> patterns, Writer writer, EnumerationMetrics metrics){
+        if (cla.top > 0) {
+            TopPatterns top_patterns = new TopPatterns(cla.top);
+            for (Pattern pattern : patterns.values()) {
+                top_patterns.offer(pattern);
+            }
+            patterns = new HashMap<>();
+            for (Pattern pattern : top_patterns.getPatterns()) {
+                patterns.put(pattern.getPattern(), pattern);
+            }
+        }
+        if (cla.input_patterns_file_name == null) {
+            metrics.startPhase("remove_redundant");
+            CSBFinder.removeRedundantPatterns(patterns, cla.non_directons);
+        }
+        writePatterns(new ArrayList<>(patterns.values()), writer, metrics);
+    }
+
+    /**
+     * @param chars char indexes
+     * @return the chars, by their index
+     */
+    private List<String> getChars(BitSet chars){
+        List<String> chars_list = new ArrayList<>();
+        for (int ch = chars.nextSetBit(0); ch >= 0; ch = chars.nextSetBit(ch + 1)) {
+            chars_list.add(utils.index_to_char.get(ch));
+        }
+        return chars_list;
+    }
+
+    /**
+     * Reports the gene families that the CSBs that were not enumerated before the timeout start with, and lists them
+     * in UNEXPLORED_FILE_NAME. The CSBs that start with other gene families were all found
+     * @param unexplored_chars
+     * @param path the output directory of the CSBs
+     */
+    private void reportUnexploredChars(List<String> unexplored_chars, String path){
+        if (unexplored_chars.isEmpty()) {
+            return;
+        }
+        File unexplored_file = new File(path, UNEXPLORED_FILE_NAME);
+        try {
+            Files.write(unexplored_file.toPath(), unexplored_chars);
+        } catch (IOException e) {
+            System.out.println("Could not write " + unexplored_file + ": " + e.getMessage());
+        }
+        logger.writeLogger("Enumeration stopped at the timeout, CSBs that start with " + unexplored_chars.size()
+                + " gene families were not all found");
+        System.out.println("Enumeration stopped at the timeout, CSBs that start with " + unexplored_chars.size()
+                + " gene families were not all found, they are listed in " + unexplored_file);
+    }
+
+    private void scorePatterns(List<Pattern> patterns, int max_insertion){
+        for (Pattern pattern : patterns) {
+            pattern.calculateScore(utils, max_insertion, cla.max_error, cla.max_deletion);
+            pattern.calculateMainFunctionalCategory(utils, cla.non_directons);
+        }
+        utils.measureMemory();
+    }
+
+    /**
+     * Clusters the patterns to families, and writes them
+     * @param patterns patterns whose score was calculated
+     * @param writer
+     * @param metrics
+     */
+    private void writePatterns(List<Pattern> patterns, Writer writer, EnumerationMetrics metrics){
+        System.out.println("Clustering to families");
+        metrics.startPhase("cluster");
+        List<Family> families = FamilyClustering.Cluster(patterns, cla.threshold, cla.cluster_by, utils,
+                cla.non_directons);
+
+        utils.measureMemory();
+
+        System.out.println("Writing to files");
+        metrics.startPhase("write");
+        for (Family family : families) {
+            writer.printFilteredCSB(family.getPatterns().get(0), utils, family.getFamilyId());
+            for (Pattern pattern : family.getPatterns()) {
+                writer.printPattern(pattern, utils, family.getFamilyId());
+            }
+        }
+        utils.measureMemory();
+    }
+
     /**
      * Executes CSBFinder and prints colinear synteny blocks
      *
@@ -163,14 +612,43 @@ public class Main {
         utils.char_to_index.put("X-", utils.UNK_CHAR_INDEX);
 
         long startTime = System.nanoTime();
+        cancellation = null;
+        if (cla.timeout > 0) {
+            cancellation = new EnumerationCancellation(cla.timeout);
+        }
 
-        GeneralizedSuffixTree dataset_suffix_tree = new GeneralizedSuffixTree();
+        EnumerationMetrics metrics = new EnumerationMetrics();
+        metrics.register();
+        MetricsWriter metrics_writer = null;
+        if (cla.metrics_interval > 0) {
+            metrics_writer = MetricsWriter.start(output_path + "metrics.jsonl", metrics::snapshot,
+                    cla.metrics_interval);
+        }
 
-        logger.writeLogger("Building Data tree");
-        System.out.println("Building Data tree");
+        metrics.startPhase("build_data_tree");
+        FlatSuffixTree data_tree = null;
+        int number_of_genomes = -1;
 
-        int number_of_genomes = utils.readAndBuildDatasetTree(INPUT_PATH+cla.input_file_name,
-                                                                    dataset_suffix_tree, cla.non_directons);
+        File input_file = new File(INPUT_PATH + cla.input_file_name);
+        if (cla.snapshot_file_name != null) {
+            data_tree = DataTreeSnapshot.read(cla.snapshot_file_name, input_file, cla.non_directons, utils);
+        }
+
+        if (data_tree != null) {
+            logger.writeLogger("Data tree was read from " + cla.snapshot_file_name);
+            System.out.println("Data tree was read from " + cla.snapshot_file_name);
+            number_of_genomes = utils.number_of_genomes;
+        }else {
+            data_tree = buildDataTree(input_file);
+            if (data_tree != null) {
+                number_of_genomes = utils.number_of_genomes;
+                if (cla.snapshot_file_name != null &&
+                        DataTreeSnapshot.write(cla.snapshot_file_name, input_file, cla.non_directons, data_tree, utils)) {
+                    logger.writeLogger("Data tree was saved to " + cla.snapshot_file_name);
+                    System.out.println("Data tree was saved to " + cla.snapshot_file_name);
+                }
+            }
+        }
 
         utils.measureMemory();
 
@@ -179,57 +657,19 @@ public class Main {
             //read patterns from a file if a file is given, and put them in a suffix trie
             Trie pattern_tree = buildPatternsTree();
 
-            System.out.println("Extracting CSBs from " + number_of_genomes + " input sequences.");
-
-            CSBFinder CSBFinder = new CSBFinder(cla.max_error, cla.max_wildcards, cla.max_deletion, cla.max_insertion,
-                    cla.quorum1, cla.quorum2,
-                    cla.min_pattern_length, cla.max_pattern_length, utils.GAP_CHAR_INDEX, utils.WC_CHAR_INDEX,
-                    dataset_suffix_tree, pattern_tree, cla.mult_count, utils, cla.memory_saving_mode, writer,
-                    cla.non_directons, cla.debug);
-
-            utils.measureMemory();
-
-            if (cla.input_patterns_file_name == null) {
-                if (!cla.memory_saving_mode) {
-                    System.out.println("Removing redundant CSBs");
-                    logger.writeLogger("CSBs found: " + CSBFinder.getPatternsCount());
-
-                    CSBFinder.removeRedundantPatterns();
-                    if (cla.debug) {
-                        utils.measureMemory();
-                        logger.writeLogger("CSBs left after removing redundant CSBs: " + CSBFinder.getPatternsCount());
-                    }
-                }
+            if (cla.shard >= 0) {
+                findShardCSBs(data_tree, pattern_tree, number_of_genomes, metrics);
+            }else if (cla.num_of_workers > 0) {
+                coordinateWorkers(data_tree, number_of_genomes, metrics);
+            }else if (sweep_configurations == null) {
+                findCSBs(data_tree, pattern_tree, number_of_genomes, metrics);
+            }else {
+                sweep(data_tree, pattern_tree, number_of_genomes, metrics);
             }
-
-            if (!cla.memory_saving_mode) {
-                List<Pattern> patterns = CSBFinder.getPatterns();
-
-                for (Pattern pattern : patterns) {
-                    pattern.calculateScore(utils, cla.max_insertion, cla.max_error, cla.max_deletion);
-                    pattern.calculateMainFunctionalCategory(utils, cla.non_directons);
-                }
-                utils.measureMemory();
-
-                System.out.println("Clustering to families");
-                List<Family> families = FamilyClustering.Cluster(patterns, cla.threshold, cla.cluster_by, utils,
-                        cla.non_directons);
-
-                utils.measureMemory();
-
-                System.out.println("Writing to files");
-                for (Family family : families) {
-                    writer.printFilteredCSB(family.getPatterns().get(0), utils, family.getFamilyId());
-                    for (Pattern pattern : family.getPatterns()) {
-                        writer.printPattern(pattern, utils, family.getFamilyId());
-                    }
-                }
-                utils.measureMemory();
-
+            metrics.endPhase();
+            if (metrics_writer != null) {
+                metrics_writer.close();
             }
-            writer.closeFiles();
-
-            System.out.println(writer.getCountPrintedPatterns() + " CSBs found");
 
             float estimatedTime = (float) (System.nanoTime() - startTime) / (float) Math.pow(10, 9);
             logger.writeLogger("Took " + estimatedTime + " seconds");
@@ -0,0 +1,180 @@
+package Main;
+
+import Utils.Pattern;
+import Utils.Utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The configurations of a parameter sweep, that are reported from as few enumerations of the data tree as possible.
+ *
+ * A pattern is reported if it passes the quorums and lengths of the run, and is right maximal: it has more instances
+ * than each of its extensions by one char. An extension that does not pass q2 or the maximal length still counts, so
+ * the patterns of a configuration are the patterns of a run with a lower q2, lower minimal length and higher maximal
+ * length, that pass its q2 and lengths. The insertions change the instances, and q1 changes the extensions that are
+ * compared, so configurations are only reported from the same run if they have the same insertions and q1.
+ * When counting multiple instances per input string, q2 is compared to a count that is not kept in the patterns, so
+ * each q2 is enumerated on its own
+ */
+class ParameterSweep {
+
+    static class Configuration {
+        final int quorum1;
+        final int quorum2;
+        final int max_insertion;
+        final int min_pattern_length;
+        final int max_pattern_length;
+
+        Configuration(int quorum1, int quorum2, int max_insertion, int min_pattern_length, int max_pattern_length){
+            this.quorum1 = quorum1;
+            this.quorum2 = quorum2;
+            this.max_insertion = max_insertion;
+            this.min_pattern_length = min_pattern_length;
+            this.max_pattern_length = max_pattern_length;
+        }
+
+        /**
+         * @return the name of the output directory of the configuration
+         */
+        String getName(){
+            String name = "q" + quorum2 + "_qexact" + quorum1 + "_ins" + max_insertion + "_lmin" + min_pattern_length;
+            if (max_pattern_length < Integer.MAX_VALUE) {
+                name += "_lmax" + max_pattern_length;
+            }
+            return name;
+        }
+    }
+
+    /**
+     * Parses the configurations of -sweep. Configurations are separated by ';', each is a comma separated list of
+     * parameter=values, with the parameters q, qexact, ins, lmin and lmax. Values separated by '/' are swept, a
+     * configuration is created for each combination of values. A parameter that is not given gets its default value.
+     * e.g. "q=5/10/20/50,ins=0/1/2" has 12 configurations
+     *
+     * @param sweep
+     * @param default_configuration
+     * @return the configurations, with no duplicates, null if sweep is not valid
+     */
+    static List<Configuration> parse(String sweep, Configuration default_configuration){
+        Map<String, Configuration> configurations = new LinkedHashMap<>();
+        for (String configuration_str : sweep.split(";")) {
+            if (configuration_str.trim().isEmpty()) {
+                continue;
+            }
+            Map<String, int[]> values = new HashMap<>();
+            values.put("q", new int[]{default_configuration.quorum2});
+            values.put("qexact", new int[]{default_configuration.quorum1});
+            values.put("ins", new int[]{default_configuration.max_insertion});
+            values.put("lmin", new int[]{default_configuration.min_pattern_length});
+            values.put("lmax", new int[]{default_configuration.max_pattern_length});
+
+            for (String parameter : configuration_str.split(",")) {
+                String[] name_and_values = parameter.trim().split("=");
+                if (name_and_values.length != 2 || !values.containsKey(name_and_values[0].trim())) {
+                    System.out.println("Sweep parameter should be one of q, qexact, ins, lmin or lmax, with values " +
+                            "(found " + parameter + ")");
+                    return null;
+                }
+                String name = name_and_values[0].trim();
+                String[] values_str = name_and_values[1].split("/");
+                int[] parameter_values = new int[values_str.length];
+                int min_value = name.startsWith("l") ? 2 : 0;
+                for (int i = 0; i < values_str.length; i++) {
+                    try {
+                        parameter_values[i] = Integer.parseInt(values_str[i].trim());
+                    }catch (NumberFormatException e){
+                        parameter_values[i] = -1;
+                    }
+                    if (parameter_values[i] < min_value) {
+                        System.out.println("Sweep parameter " + name + " should be an integer, at least " +
+                                min_value + " (found " + values_str[i] + ")");
+                        return null;
+                    }
+                }
+                values.put(name, parameter_values);
+            }
+
+            for (int quorum2 : values.get("q")) {
+                for (int quorum1 : values.get("qexact")) {
+                    for (int max_insertion : values.get("ins")) {
+                        for (int min_pattern_length : values.get("lmin")) {
+                            for (int max_pattern_length : values.get("lmax")) {
+                                Configuration configuration = new Configuration(quorum1, quorum2, max_insertion,
+                                        min_pattern_length, max_pattern_length);
+                                configurations.put(configuration.getName(), configuration);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (configurations.isEmpty()) {
+            System.out.println("No configurations to sweep");
+            return null;
+        }
+        return new ArrayList<>(configurations.values());
+    }
+
+    /**
+     * @param configurations
+     * @param mult_count
+     * @return the configurations that are reported from the same run, in the order of their first configuration
+     */
+    static List<List<Configuration>> group(List<Configuration> configurations, boolean mult_count){
+        Map<String, List<Configuration>> groups = new LinkedHashMap<>();
+        for (Configuration configuration : configurations) {
+            String key = configuration.max_insertion + " " + configuration.quorum1;
+            if (mult_count) {
+                key += " " + configuration.quorum2;
+            }
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(configuration);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * @param group configurations with the same insertions and q1
+     * @return the configuration of the run that the group is reported from
+     */
+    static Configuration getLoosest(List<Configuration> group){
+        Configuration first = group.get(0);
+        int quorum2 = first.quorum2;
+        int min_pattern_length = first.min_pattern_length;
+        int max_pattern_length = first.max_pattern_length;
+        for (Configuration configuration : group) {
+            quorum2 = Math.min(quorum2, configuration.quorum2);
+            min_pattern_length = Math.min(min_pattern_length, configuration.min_pattern_length);
+            max_pattern_length = Math.max(max_pattern_length, configuration.max_pattern_length);
+        }
+        return new Configuration(first.quorum1, quorum2, first.max_insertion, min_pattern_length,
+                max_pattern_length);
+    }
+
+    /**
+     * @param patterns the patterns of the loosest configuration of the group of configuration
+     * @param configuration
+     * @param mult_count if true, the patterns were enumerated with the q2 of configuration
+     * @return the patterns of configuration, by their string
+     */
+    static Map<String, Pattern> select(List<Pattern> patterns, Configuration configuration, boolean mult_count){
+        Map<String, Pattern> selected = new HashMap<>();
+        for (Pattern pattern : patterns) {
+            int wildcard_count = 0;
+            for (String ch : pattern.getPatternArr()) {
+                if (ch.equals(Utils.WC_CHAR)) {
+                    wildcard_count++;
+                }
+            }
+            int length = pattern.getLength() - wildcard_count;
+            if ((mult_count || pattern.getInstanceCount() >= configuration.quorum2) && length >= configuration.min_pattern_length &&
+                    length <= configuration.max_pattern_length) {
+                selected.put(pattern.getPattern(), pattern);
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,203 @@
+package Main;
+
+import IO.Writer;
+import Utils.Pattern;
+import Utils.Utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scores and writes the patterns found in memory saving mode, so that the enumeration does not wait for them.
+ *
+ * The enumeration submits each pattern to a pool of scoring threads, and puts the result in a bounded queue, in the
+ * order the patterns were submitted. A single writer thread takes the results from the queue and writes them, so the
+ * patterns are written in the same order as they would be written without the pipeline.
+ * When the queue is full, submit waits for the writer, so at most QUEUE_CAPACITY patterns are held in memory.
+ */
+class PatternPipeline {
+    private static final int QUEUE_CAPACITY = 1024;
+    /**
+     * Put in the queue by close, after the last pattern
+     */
+    private static final Future<Pattern> END = CompletableFuture.completedFuture(null);
+
+    private final Utils utils;
+    private final Writer writer;
+    private final int max_insertion;
+    private final int max_error;
+    private final int max_deletion;
+    private final boolean non_directons;
+
+    private final ExecutorService scoring_pool;
+    private final BlockingQueue<Future<Pattern>> queue;
+    private final Thread writer_thread;
+    /**
+     * The first error of the scoring or writing stage, the patterns after it are not written
+     */
+    private volatile Throwable failure;
+
+    private final AtomicLong submitted_count;
+    private final AtomicLong scored_count;
+    private final AtomicLong written_count;
+    /**
+     * Time the enumeration waited for a full queue
+     */
+    private final AtomicLong submit_wait_nanos;
+    private final AtomicLong scoring_nanos;
+    private final AtomicLong writing_nanos;
+    private final long start_time;
+
+    /**
+     * @param utils
+     * @param writer
+     * @param max_insertion
+     * @param max_error
+     * @param max_deletion
+     * @param non_directons
+     * @param scoring_threads number of threads that score patterns
+     */
+    PatternPipeline(Utils utils, Writer writer, int max_insertion, int max_error, int max_deletion,
+                    boolean non_directons, int scoring_threads){
+        this.utils = utils;
+        this.writer = writer;
+        this.max_insertion = max_insertion;
+        this.max_error = max_error;
+        this.max_deletion = max_deletion;
+        this.non_directons = non_directons;
+
+        submitted_count = new AtomicLong();
+        scored_count = new AtomicLong();
+        written_count = new AtomicLong();
+        submit_wait_nanos = new AtomicLong();
+        scoring_nanos = new AtomicLong();
+        writing_nanos = new AtomicLong();
+        failure = null;
+
+        scoring_pool = Executors.newFixedThreadPool(Math.max(1, scoring_threads), runnable -> {
+            Thread thread = new Thread(runnable, "CSB scoring");
+            thread.setDaemon(true);
+            return thread;
+        });
+        queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        writer_thread = new Thread(this::writePatterns, "CSB writer");
+        writer_thread.setDaemon(true);
+        start_time = System.nanoTime();
+        writer_thread.start();
+    }
+
+    /**
+     * Scores and writes pattern, waits if QUEUE_CAPACITY patterns are already waiting to be written
+     * @param pattern
+     */
+    void submit(Pattern pattern){
+        Future<Pattern> scored_pattern = scoring_pool.submit(() -> score(pattern));
+        long wait_start = System.nanoTime();
+        try {
+            queue.put(scored_pattern);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing CSBs", e);
+        }
+        submit_wait_nanos.addAndGet(System.nanoTime() - wait_start);
+        submitted_count.incrementAndGet();
+    }
+
+    /**
+     * Waits until all the submitted patterns are written, and stops the threads of the pipeline
+     * @throws IllegalStateException if a pattern could not be scored or written
+     */
+    void close(){
+        try {
+            queue.put(END);
+            writer_thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing CSBs", e);
+        } finally {
+            scoring_pool.shutdownNow();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Could not write CSBs: " + failure.getMessage(), failure);
+        }
+    }
+
+    private Pattern score(Pattern pattern){
+        long start = System.nanoTime();
+        pattern.calculateScore(utils, max_insertion, max_error, max_deletion);
+        pattern.calculateMainFunctionalCategory(utils, non_directons);
+        scoring_nanos.addAndGet(System.nanoTime() - start);
+        scored_count.incrementAndGet();
+        return pattern;
+    }
+
+    /**
+     * Run by the writer thread, until END is taken from the queue. After a failure the queue is still drained, so that
+     * the enumeration does not wait for it
+     */
+    private void writePatterns(){
+        while (true) {
+            Pattern pattern;
+            try {
+                pattern = queue.take().get();
+            } catch (InterruptedException e) {
+                failure = e;
+                return;
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+                continue;
+            }
+            if (pattern == null) {
+                return;
+            }
+            if (failure == null) {
+                long start = System.nanoTime();
+                try {
+                    writer.printPattern(pattern, utils);
+                } catch (RuntimeException e) {
+                    failure = e;
+                    continue;
+                }
+                writing_nanos.addAndGet(System.nanoTime() - start);
+                written_count.incrementAndGet();
+            }
+        }
+    }
+
+    long getSubmittedCount(){
+        return submitted_count.get();
+    }
+
+    long getScoredCount(){
+        return scored_count.get();
+    }
+
+    long getWrittenCount(){
+        return written_count.get();
+    }
+
+    /**
+     * @return the counters of the stages, and their throughput in patterns per second of busy time
+     */
+    @Override
+    public String toString(){
+        double seconds = (System.nanoTime() - start_time) / 1e9;
+        return String.format("CSB pipeline: %d submitted in %.2f s (waited %.2f s for a full queue), "
+                        + "%d scored (%.0f per second), %d written (%.0f per second)",
+                submitted_count.get(), seconds, submit_wait_nanos.get() / 1e9,
+                scored_count.get(), perSecond(scored_count.get(), scoring_nanos.get()),
+                written_count.get(), perSecond(written_count.get(), writing_nanos.get()));
+    }
+
+    private static double perSecond(long count, long nanos){
+        return nanos == 0 ? 0 : count / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,85 @@
+package Main;
+
+import Utils.Pattern;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the K patterns with the highest score, when only the top K patterns are reported.
+ * Redundant patterns are removed from the kept patterns only after the enumeration, so they take places among the K
+ * and at most K patterns are reported.
+ * Patterns are offered while the enumeration runs, possibly by several threads.
+ * Patterns with the same score are ordered by their string, so the kept patterns do not depend on the order in which
+ * they were offered. A pattern can be offered more than once, only its best offer is kept.
+ */
+class TopPatterns {
+    /**
+     * The worst pattern is the one with the lowest score, and on equal scores the one with the largest string
+     */
+    private static final Comparator<Pattern> WORST_FIRST = Comparator.comparingDouble(Pattern::getScore)
+            .thenComparing(Pattern::getPattern, Comparator.reverseOrder());
+
+    private final int capacity;
+    private final PriorityQueue<Pattern> heap;
+    /**
+     * The patterns in heap by their string
+     */
+    private final Map<String, Pattern> kept;
+    /**
+     * The score of the worst kept pattern once capacity patterns are kept, -infinity before that
+     */
+    private volatile double min_score;
+
+    TopPatterns(int capacity){
+        this.capacity = capacity;
+        heap = new PriorityQueue<>(capacity, WORST_FIRST);
+        kept = new HashMap<>();
+        min_score = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Keeps pattern if it is one of the best capacity patterns so far
+     * @param pattern a pattern whose score was calculated
+     */
+    synchronized void offer(Pattern pattern){
+        Pattern same_pattern = kept.get(pattern.getPattern());
+        if (same_pattern != null) {
+            if (pattern.getScore() <= same_pattern.getScore()) {
+                return;
+            }
+            heap.remove(same_pattern);
+        } else if (heap.size() == capacity) {
+            if (WORST_FIRST.compare(pattern, heap.peek()) <= 0) {
+                return;
+            }
+            kept.remove(heap.poll().getPattern());
+        }
+        heap.add(pattern);
+        kept.put(pattern.getPattern(), pattern);
+
+        if (heap.size() == capacity) {
+            min_score = heap.peek().getScore();
+        }
+    }
+
+    /**
+     * @return a pattern whose score is lower than this cannot be one of the best patterns
+     */
+    double getMinScore(){
+        return min_score;
+    }
+
+    /**
+     * @return the kept patterns, from the best to the worst
+     */
+    synchronized List<Pattern> getPatterns(){
+        List<Pattern> patterns = new ArrayList<>(heap);
+        patterns.sort(WORST_FIRST.reversed());
+        return patterns;
+    }
+}
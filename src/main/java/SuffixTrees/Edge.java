@@ -33,6 +33,14 @@ public class Edge implements Serializable{
         this.dest = dest;
     }
 
+    /**
+     * @param word the label is word[start_index, end_index)
+     */
+    public Edge(int[] word, int start_index, int end_index, SuffixNode dest) {
+        this.label = new WordArray(word, start_index, end_index);
+        this.dest = dest;
+    }
+
     public Edge(Edge other){
         this.label = new WordArray(other.label);
         this.dest = other.dest;
@@ -0,0 +1,534 @@
+package SuffixTrees;
+
+import Utils.InstanceLocation;
+import Utils.WordArray;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An array based copy of a GeneralizedSuffixTree, used by the enumeration.
+ *
+ * Nodes are ints, numbered in BFS order, the root is 0. A node has no objects of its own, everything about it is
+ * kept in parallel int buffers indexed by the node: its first child, its next sibling, its suffix link, the label of
+ * the edge that enters it (an offset and a length in text, the concatenation of all the words that were put in the
+ * tree), its cached count and its interval of occurrences.
+ * An edge is identified by the node it enters. The children of a node have consecutive ids, ordered by the first char
+ * of their label, so a child is found by a binary search.
+ *
+ * The tree is built once from a GeneralizedSuffixTree, after that the GeneralizedSuffixTree is not needed anymore.
+ * It can be written to a snapshot with write, and read back from it. The buffers of a built tree wrap arrays, the
+ * buffers of a tree that was read are views of the snapshot.
+ */
+public class FlatSuffixTree {
+    /**
+     * The root of the tree
+     */
+    public static final int ROOT = 0;
+    /**
+     * Marks a missing node, i.e. a missing child, sibling or suffix link
+     */
+    public static final int NONE = -1;
+
+    private final int number_of_nodes;
+
+    /**
+     * The children of node v are first_child[v], ..., first_child[v + 1] - 1
+     */
+    private final IntBuffer first_child;
+    private final IntBuffer next_sibling;
+    private final IntBuffer suffix_link;
+
+    /**
+     * The label of the edge that enters node v is text[label_start[v], label_start[v] + label_length[v])
+     */
+    private final IntBuffer label_start;
+    private final IntBuffer label_length;
+    private final IntBuffer text;
+
+    private final IntBuffer count_by_keys;
+
+    /**
+     * The occurrences of the tree in DFS order: the suffixes that end at a node (the data of the node) followed by the
+     * occurrences of its subtrees, by ascending first char. The occurrences of node v and of all the nodes below it are
+     * occurrences[occurrence_from[v]], ..., occurrences[occurrence_to[v] - 1].
+     * occurrence_keys holds the key of the string of each occurrence, and the other occurrence columns its location
+     */
+    private final IntBuffer occurrence_from;
+    private final IntBuffer occurrence_to;
+    private final IntBuffer occurrence_keys;
+    private final IntBuffer occurrence_replicon_ids;
+    private final IntBuffer occurrence_start_indexes;
+    private final ByteBuffer occurrence_strands;
+
+    /**
+     * Copies the given tree.
+     *
+     * The tree is traversed three times, without a map from its nodes to their ids: a DFS counts the nodes and the
+     * occurrences so that the arrays can be allocated, a BFS numbers the nodes and fills the edges (a node is numbered
+     * when its parent is dequeued, the queue order is the id order), and a DFS fills the occurrences, knowing the id
+     * of every node it pushes from the ids of its parent's children.
+     * @param tree
+     */
+    public FlatSuffixTree(GeneralizedSuffixTree tree){
+        //the labels are substrings of the words put in the tree, the words are concatenated to text
+        IdentityHashMap<int[], Integer> word_offsets = new IdentityHashMap<>();
+        int text_length = 0;
+        int nodes_count = 0;
+        int occurrences_count = 0;
+        ArrayDeque<SuffixNode> stack = new ArrayDeque<>();
+        stack.push(tree.getRoot());
+        while (!stack.isEmpty()) {
+            SuffixNode node = stack.pop();
+            nodes_count++;
+            occurrences_count += ((InstanceNode) node).getDataSize();
+            IntMap<Edge> edges = node.getEdges();
+            for (int i = 0; i < edges.size(); i++) {
+                int[] word = edges.valueAt(i).getLabel().wordArray;
+                if (!word_offsets.containsKey(word)) {
+                    word_offsets.put(word, text_length);
+                    text_length += word.length;
+                }
+                stack.push(edges.valueAt(i).getDest());
+            }
+        }
+
+        number_of_nodes = nodes_count;
+        int[] first_child = new int[number_of_nodes + 1];
+        int[] next_sibling = new int[number_of_nodes];
+        int[] label_start = new int[number_of_nodes];
+        int[] label_length = new int[number_of_nodes];
+
+        int[] text = new int[text_length];
+        for (Map.Entry<int[], Integer> entry : word_offsets.entrySet()) {
+            System.arraycopy(entry.getKey(), 0, text, entry.getValue(), entry.getKey().length);
+        }
+
+        //the children of the root start at 1, the children of every other node follow the children of the node before it
+        ArrayDeque<SuffixNode> queue = new ArrayDeque<>();
+        queue.add(tree.getRoot());
+        int next_child = ROOT + 1;
+        for (int v = 0; v < number_of_nodes; v++) {
+            IntMap<Edge> edges = queue.poll().getEdges();
+            first_child[v] = next_child;
+            for (int i = 0; i < edges.size(); i++) {
+                int child = next_child++;
+                WordArray label = edges.valueAt(i).getLabel();
+
+                label_start[child] = word_offsets.get(label.wordArray) + label.get_start_index();
+                label_length[child] = label.get_length();
+                next_sibling[child] = i + 1 < edges.size() ? child + 1 : NONE;
+                queue.add(edges.valueAt(i).getDest());
+            }
+        }
+        first_child[number_of_nodes] = next_child;
+        next_sibling[ROOT] = NONE;
+
+        this.first_child = IntBuffer.wrap(first_child);
+        this.next_sibling = IntBuffer.wrap(next_sibling);
+        this.label_start = IntBuffer.wrap(label_start);
+        this.label_length = IntBuffer.wrap(label_length);
+        this.text = IntBuffer.wrap(text);
+        suffix_link = IntBuffer.wrap(findSuffixLinks());
+
+        //place the data of each node at the start of its interval, followed by the intervals of its children, in DFS
+        //order. A suffix of length depth of a word of length m starts m - depth chars after the word
+        int[] occurrence_from = new int[number_of_nodes];
+        int[] occurrence_to = new int[number_of_nodes];
+        int[] occurrence_keys = new int[occurrences_count];
+        int[] occurrence_replicon_ids = new int[occurrences_count];
+        int[] occurrence_start_indexes = new int[occurrences_count];
+        byte[] occurrence_strands = new byte[occurrences_count];
+
+        int[] stack_ids = new int[16];
+        int[] stack_depths = new int[16];
+        int stack_size = 0;
+        stack.push(tree.getRoot());
+        stack_ids[stack_size] = ROOT;
+        stack_depths[stack_size++] = 0;
+        int next_occurrence = 0;
+        while (stack_size > 0) {
+            InstanceNode node = (InstanceNode) stack.pop();
+            stack_size--;
+            int v = stack_ids[stack_size];
+            int depth = stack_depths[stack_size];
+
+            occurrence_from[v] = next_occurrence;
+            for (int i = 0; i < node.getDataSize(); i++) {
+                int word_id = node.getWordId(i);
+                InstanceLocation word_location = tree.getWordLocation(word_id);
+                occurrence_keys[next_occurrence] = tree.getWordKey(word_id);
+                occurrence_replicon_ids[next_occurrence] = word_location.getRepliconId();
+                occurrence_start_indexes[next_occurrence] = word_location.getStartIndex()
+                        + (tree.getWordLength(word_id) - depth) * word_location.getStrand();
+                occurrence_strands[next_occurrence] = (byte) word_location.getStrand();
+                next_occurrence++;
+            }
+            occurrence_to[v] = next_occurrence;
+
+            //children are pushed by descending char, so that they are popped by ascending char
+            IntMap<Edge> edges = node.getEdges();
+            if (stack_size + edges.size() > stack_ids.length) {
+                stack_ids = Arrays.copyOf(stack_ids, Math.max(stack_ids.length * 2, stack_size + edges.size()));
+                stack_depths = Arrays.copyOf(stack_depths, stack_ids.length);
+            }
+            for (int i = edges.size() - 1; i >= 0; i--) {
+                int child = first_child[v] + i;
+                stack.push(edges.valueAt(i).getDest());
+                stack_ids[stack_size] = child;
+                stack_depths[stack_size++] = depth + label_length[child];
+            }
+        }
+        //the interval of a node with children ends with the interval of its last child.
+        //Children have larger ids than their parent, so their intervals are known first
+        for (int v = number_of_nodes - 1; v >= 0; v--) {
+            if (first_child[v] < first_child[v + 1]) {
+                occurrence_to[v] = occurrence_to[first_child[v + 1] - 1];
+            }
+        }
+
+        this.occurrence_from = IntBuffer.wrap(occurrence_from);
+        this.occurrence_to = IntBuffer.wrap(occurrence_to);
+        this.occurrence_keys = IntBuffer.wrap(occurrence_keys);
+        this.occurrence_replicon_ids = IntBuffer.wrap(occurrence_replicon_ids);
+        this.occurrence_start_indexes = IntBuffer.wrap(occurrence_start_indexes);
+        this.occurrence_strands = ByteBuffer.wrap(occurrence_strands);
+
+        count_by_keys = IntBuffer.wrap(countKeys());
+    }
+
+    /**
+     * Reads a tree that was written by write, starting at the current position of the buffer.
+     * The arrays of the tree are not copied, the tree reads them from the buffer
+     * @param in typically a buffer mapped from a snapshot file
+     */
+    public FlatSuffixTree(ByteBuffer in){
+        number_of_nodes = in.getInt();
+        first_child = readArray(in);
+        next_sibling = readArray(in);
+        suffix_link = readArray(in);
+        label_start = readArray(in);
+        label_length = readArray(in);
+        text = readArray(in);
+        count_by_keys = readArray(in);
+
+        occurrence_from = readArray(in);
+        occurrence_to = readArray(in);
+        occurrence_keys = readArray(in);
+        occurrence_replicon_ids = readArray(in);
+        occurrence_start_indexes = readArray(in);
+
+        int strands_length = in.getInt();
+        ByteBuffer strands = in.slice();
+        strands.limit(strands_length);
+        occurrence_strands = strands;
+        in.position(in.position() + strands_length);
+    }
+
+    /**
+     * Writes the tree, it can be read back with FlatSuffixTree(ByteBuffer).
+     * Every array starts at an offset of out that is a multiple of 4, so that it can be read through an aligned view
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(number_of_nodes);
+        writeArray(out, first_child);
+        writeArray(out, next_sibling);
+        writeArray(out, suffix_link);
+        writeArray(out, label_start);
+        writeArray(out, label_length);
+        writeArray(out, text);
+        writeArray(out, count_by_keys);
+
+        writeArray(out, occurrence_from);
+        writeArray(out, occurrence_to);
+        writeArray(out, occurrence_keys);
+        writeArray(out, occurrence_replicon_ids);
+        writeArray(out, occurrence_start_indexes);
+
+        out.writeInt(occurrence_strands.limit());
+        for (int i = 0; i < occurrence_strands.limit(); i++) {
+            out.writeByte(occurrence_strands.get(i));
+        }
+    }
+
+    private static void writeArray(DataOutputStream out, IntBuffer array) throws IOException {
+        while (out.size() % Integer.BYTES != 0) {
+            out.writeByte(0);
+        }
+        out.writeInt(array.limit());
+        for (int i = 0; i < array.limit(); i++) {
+            out.writeInt(array.get(i));
+        }
+    }
+
+    /**
+     * @return a view of the next array of in, in is moved past it
+     */
+    private static IntBuffer readArray(ByteBuffer in){
+        while (in.position() % Integer.BYTES != 0) {
+            in.get();
+        }
+        int length = in.getInt();
+        ByteBuffer array = in.slice();
+        array.limit(length * Integer.BYTES);
+        in.position(in.position() + length * Integer.BYTES);
+        return array.order(in.order()).asIntBuffer();
+    }
+
+    /**
+     * The suffix link of a node v is the node of the string of v without its first char, NONE for the root. It is
+     * found by walking from the suffix link of the parent of v along the label of v (from its second char if the
+     * parent is the root), one edge at a time. Children have larger ids than their parent, so the suffix link of the
+     * parent is known first.
+     * @return the suffix link of every node, NONE if the string of v without its first char ends inside an edge
+     */
+    private int[] findSuffixLinks(){
+        int[] suffix_links = new int[number_of_nodes];
+        suffix_links[ROOT] = NONE;
+        for (int v = 0; v < number_of_nodes; v++) {
+            int from_node = v == ROOT ? ROOT : suffix_links[v];
+            int skip = v == ROOT ? 1 : 0;
+            for (int child = first_child.get(v); child < first_child.get(v + 1); child++) {
+                int node = from_node;
+                int index = label_start.get(child) + skip;
+                int remaining = label_length.get(child) - skip;
+                while (node != NONE && remaining > 0) {
+                    node = getChild(node, text.get(index));
+                    if (node != NONE && label_length.get(node) > remaining) {
+                        node = NONE;
+                    } else if (node != NONE) {
+                        index += label_length.get(node);
+                        remaining -= label_length.get(node);
+                    }
+                }
+                suffix_links[child] = node;
+            }
+        }
+        return suffix_links;
+    }
+
+    /**
+     * Counts the different string keys in the interval of every node, in O(n) (Hui's algorithm).
+     *
+     * Every two consecutive occurrences of the same key (in DFS order) are counted twice in the lowest common ancestor
+     * of their nodes and in every node above it, so the number of different keys of a node is the size of its interval
+     * minus the number of such pairs whose lowest common ancestor is in its subtree.
+     * The lowest common ancestor of a visited node and the node that is being visited is the lowest ancestor of the
+     * visited node that was not finished yet, it is found by a union-find in which every finished node is linked to
+     * its parent.
+     */
+    private int[] countKeys(){
+        int max_key = -1;
+        for (int i = 0; i < occurrence_keys.limit(); i++) {
+            max_key = Math.max(max_key, occurrence_keys.get(i));
+        }
+        //last_node[key] is the node of the last occurrence of key that was visited
+        int[] last_node = new int[max_key + 1];
+        Arrays.fill(last_node, NONE);
+
+        int[] ancestor = new int[number_of_nodes];
+        for (int v = 0; v < number_of_nodes; v++) {
+            ancestor[v] = v;
+        }
+
+        //duplicates[v] is the number of pairs whose lowest common ancestor is v
+        int[] duplicates = new int[number_of_nodes];
+        //path holds the unfinished nodes, from the root to the node that is being visited
+        int[] path = new int[number_of_nodes];
+        int path_length = 0;
+        //the nodes that were not visited yet, and the length of the path above each of them
+        int[] stack = new int[number_of_nodes];
+        int[] stack_depth = new int[number_of_nodes];
+        int stack_size = 0;
+        stack[stack_size] = ROOT;
+        stack_depth[stack_size++] = 0;
+        while (stack_size > 0) {
+            stack_size--;
+            int v = stack[stack_size];
+            int depth = stack_depth[stack_size];
+            while (path_length > depth) {
+                path_length--;
+                ancestor[path[path_length]] = path[path_length - 1];
+            }
+            path[path_length++] = v;
+
+            //the data of v is at the start of its interval, before the intervals of its children
+            int data_to = first_child.get(v) < first_child.get(v + 1) ? occurrence_from.get(first_child.get(v))
+                    : occurrence_to.get(v);
+            for (int i = occurrence_from.get(v); i < data_to; i++) {
+                int key = occurrence_keys.get(i);
+                if (last_node[key] != NONE) {
+                    duplicates[findUnfinishedAncestor(ancestor, last_node[key])]++;
+                }
+                last_node[key] = v;
+            }
+
+            for (int child = first_child.get(v + 1) - 1; child >= first_child.get(v); child--) {
+                stack[stack_size] = child;
+                stack_depth[stack_size++] = path_length;
+            }
+        }
+
+        //children have larger ids than their parent
+        int[] counts = new int[number_of_nodes];
+        for (int v = number_of_nodes - 1; v >= 0; v--) {
+            for (int child = first_child.get(v); child < first_child.get(v + 1); child++) {
+                duplicates[v] += duplicates[child];
+            }
+            counts[v] = occurrence_to.get(v) - occurrence_from.get(v) - duplicates[v];
+        }
+        return counts;
+    }
+
+    /**
+     * Find of the union-find of countKeys, with path halving
+     */
+    private static int findUnfinishedAncestor(int[] ancestor, int node){
+        while (ancestor[node] != node) {
+            ancestor[node] = ancestor[ancestor[node]];
+            node = ancestor[node];
+        }
+        return node;
+    }
+
+    public int getNumberOfNodes() {
+        return number_of_nodes;
+    }
+
+    /**
+     * @param min_count_by_keys
+     * @return for each node v, the length of the longest string that starts with the string of v and is a substring of
+     * at least min_count_by_keys keys, 0 if there is no such string
+     */
+    public int[] getMaxStringDepths(int min_count_by_keys) {
+        //children have larger ids than their parent
+        int[] depth = new int[number_of_nodes];
+        for (int v = 0; v < number_of_nodes; v++) {
+            for (int child = first_child.get(v); child < first_child.get(v + 1); child++) {
+                depth[child] = depth[v] + label_length.get(child);
+            }
+        }
+        int[] max_depth = new int[number_of_nodes];
+        for (int v = number_of_nodes - 1; v >= 0; v--) {
+            if (count_by_keys.get(v) < min_count_by_keys) {
+                continue;
+            }
+            max_depth[v] = depth[v];
+            for (int child = first_child.get(v); child < first_child.get(v + 1); child++) {
+                max_depth[v] = Math.max(max_depth[v], max_depth[child]);
+            }
+        }
+        return max_depth;
+    }
+
+    /**
+     * @return the child of node with the smallest first char, NONE if node is a leaf
+     */
+    public int getFirstChild(int node) {
+        return first_child.get(node) < first_child.get(node + 1) ? first_child.get(node) : NONE;
+    }
+
+    public int getNumberOfChildren(int node) {
+        return first_child.get(node + 1) - first_child.get(node);
+    }
+
+    /**
+     * @return the next child of the parent of node, NONE if node is the last child
+     */
+    public int getNextSibling(int node) {
+        return next_sibling.get(node);
+    }
+
+    public int getSuffixLink(int node) {
+        return suffix_link.get(node);
+    }
+
+    /**
+     * @return the child of node whose label starts with ch, NONE if there is no such child
+     */
+    public int getChild(int node, int ch) {
+        int low = first_child.get(node);
+        int high = first_child.get(node + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int mid_ch = text.get(label_start.get(mid));
+            if (mid_ch < ch) {
+                low = mid + 1;
+            } else if (mid_ch > ch) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the length of the label of the edge that enters node
+     */
+    public int getLabelLength(int node) {
+        return label_length.get(node);
+    }
+
+    /**
+     * @return the char at index i of the label of the edge that enters node
+     */
+    public int getLabelChar(int node, int i) {
+        return text.get(label_start.get(node) + i);
+    }
+
+    public int getCount_by_keys(int node) {
+        return count_by_keys.get(node);
+    }
+
+    public int getCount_by_indexes(int node) {
+        return occurrence_to.get(node) - occurrence_from.get(node);
+    }
+
+    /**
+     * @return the index of the first occurrence of node and of the nodes below it
+     */
+    public int getOccurrencesFrom(int node) {
+        return occurrence_from.get(node);
+    }
+
+    /**
+     * @return the index after the last occurrence of node and of the nodes below it
+     */
+    public int getOccurrencesTo(int node) {
+        return occurrence_to.get(node);
+    }
+
+    /**
+     * @return the key of the string of occurrence i
+     */
+    public int getOccurrenceKey(int i) {
+        return occurrence_keys.get(i);
+    }
+
+    public int getOccurrenceRepliconId(int i) {
+        return occurrence_replicon_ids.get(i);
+    }
+
+    /**
+     * @return the index of the first gene of occurrence i in its replicon
+     */
+    public int getOccurrenceStartIndex(int i) {
+        return occurrence_start_indexes.get(i);
+    }
+
+    /**
+     * @return 1 or -1
+     */
+    public int getOccurrenceStrand(int i) {
+        return occurrence_strands.get(i);
+    }
+}
@@ -4,6 +4,7 @@ import Utils.InstanceLocation;
 import Utils.WordArray;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * A modified version of the Suffix Tree code from https://github.com/abahgat/suffixtree
@@ -63,10 +64,35 @@ public class GeneralizedSuffixTree  implements Serializable{
     //The string from the root to this node is the full last added string (using "put")
     private SuffixNode fullStringNode;
 
+    /**
+     * The words that were put in the tree, by their id (the order they were put in): the key of their string, their
+     * location and their length
+     */
+    private int number_of_words;
+    private int[] word_keys;
+    private int[] word_lengths;
+    private InstanceLocation[] word_locations;
+
+    /**
+     * The string that is currently added to the tree, the cursors used by put and its helpers are indexes in it
+     */
+    private transient int[] word;
+
+    //Results of canonize, testAndSplit and update, so that they do not allocate a pair for every call
+    private transient int canonized_start;
+    private transient SuffixNode split_node;
+    private transient int active_start;
+    private transient int active_end;
+
     public GeneralizedSuffixTree() {
         root = new InstanceNode();
 
         activeLeaf = root;
+
+        number_of_words = 0;
+        word_keys = new int[16];
+        word_lengths = new int[16];
+        word_locations = new InstanceLocation[16];
     }
 
     /**
@@ -166,6 +192,10 @@ public class GeneralizedSuffixTree  implements Serializable{
      * Entries must be inserted so that their indexes are in non-decreasing order,
      * otherwise an IllegalStateException will be raised.
      *
+     * All the strings handled during the insertion are substrings of str, so they are kept as cursors
+     * (start and end indexes in word) instead of WordArray objects. The insertion allocates only the nodes and
+     * the edges it adds to the tree.
+     *
      * @param str the string (word) added to the tree
      * @param key the key of the genome
      * @param instanceInfo info regarding the location of this word
@@ -177,31 +207,29 @@ public class GeneralizedSuffixTree  implements Serializable{
 
         fullStringNode = null;
 
+        word = str.wordArray;
+
         SuffixNode s = root;
 
         // proceed with tree construction (closely related to procedure in
         // Ukkonen's paper)
-        WordArray text = new WordArray(str.wordArray, 0, 0);
+        // the active string is word[text_start, text_end)
+        int text_start = str.get_start_index();
+        int text_end = text_start;
 
         // iterate over the string, one char at a time
-        for (int i = 0; i < str.get_length(); i++) {
+        for (int i = str.get_start_index(); i < str.get_end_index(); i++) {
             // line 6
-            text.add_to_end_index(1);
-
-            // line 7: update the tree with the new transitions due to this new char
-            WordArray rest = new WordArray(str.wordArray, i, str.get_end_index());
-            WordArray text_copy = new WordArray(text.wordArray, text.get_start_index(), text.get_end_index());
-
+            text_end++;
 
-            Pair<SuffixNode, WordArray> active = update(s, text_copy, rest);
+            // line 7: update the tree with the new transitions due to this new char,
+            // the rest of the string is word[i, str.get_end_index())
+            s = update(s, text_start, text_end, i, str.get_end_index());
             // line 8: make sure the active pair is canonical
-            active = canonize(active.getFirst(), active.getSecond());
-
-
-            //check what canonize returns
-            text = active.getSecond();
-            s = active.getFirst();
+            s = canonize(s, active_start, active_end);
 
+            text_start = canonized_start;
+            text_end = active_end;
         }
 
         // add leaf suffix link, if necessary
@@ -209,11 +237,46 @@ public class GeneralizedSuffixTree  implements Serializable{
             activeLeaf.setSuffix(s);
         }
 
-        //add recursively the key and indexes to the nodes corresponding to this string
+        word = null;
 
-        ((InstanceNode)fullStringNode).addDataIndex(key, instance_info);
+        //every suffix of the string ends at a node of the suffix link chain that starts at the full string node,
+        //only the id of the word is added to them, the locations of the suffixes are computed from it
+        int word_id = addWord(key, str.get_length(), instance_info);
+        InstanceNode node = (InstanceNode) fullStringNode;
+        node.addDataIndex(word_id);
+        for (node = node.getSuffix(); node != null && node.getSuffix() != null; node = node.getSuffix()) {
+            node.addDataIndex(word_id);
+        }
+    }
 
+    private int addWord(int key, int length, InstanceLocation instance_info) {
+        if (number_of_words == word_keys.length) {
+            word_keys = Arrays.copyOf(word_keys, number_of_words * 2);
+            word_lengths = Arrays.copyOf(word_lengths, number_of_words * 2);
+            word_locations = Arrays.copyOf(word_locations, number_of_words * 2);
+        }
+        word_keys[number_of_words] = key;
+        word_lengths[number_of_words] = length;
+        word_locations[number_of_words] = instance_info;
+        return number_of_words++;
+    }
+
+    /**
+     * @return the key of the string of the word word_id
+     */
+    int getWordKey(int word_id) {
+        return word_keys[word_id];
+    }
 
+    int getWordLength(int word_id) {
+        return word_lengths[word_id];
+    }
+
+    /**
+     * @return the location of the first char of the word word_id
+     */
+    InstanceLocation getWordLocation(int word_id) {
+        return word_locations[word_id];
     }
 
     /**
@@ -226,70 +289,77 @@ public class GeneralizedSuffixTree  implements Serializable{
      * Then g will be split in two different edges, one having $end as label, and the other one
      * having rest as label.
      *
+     * The last node that can be reached by following the path denoted by stringPart starting from inputs
+     * is stored in split_node.
+     *
      * @param inputs the starting node
-     * @param stringPart the string to search
+     * @param part_start start of the string to search (stringPart) in word
+     * @param part_end end of stringPart in word, exclusive
      * @param t the following character
-     * @param remainder the remainder of the string to add to the index
-     * @return a pair containing
-     * true/false depending on whether (stringPart + t) is contained in the subtree starting in inputs
-     * the last node that can be reached by following the path denoted by stringPart starting from inputs
-     *         
+     * @param remainder_start start of the remainder of the string to add to the index, in word
+     * @param remainder_end end of the remainder in word, exclusive
+     * @return true/false depending on whether (stringPart + t) is contained in the subtree starting in inputs
      */
-    private Pair<Boolean, SuffixNode> testAndSplit(final SuffixNode inputs, final WordArray stringPart, final int t,
-                                                   final WordArray remainder) {
+    private boolean testAndSplit(final SuffixNode inputs, final int part_start, final int part_end, final int t,
+                                 final int remainder_start, final int remainder_end) {
 
         // descend the tree as far as possible
-        Pair<SuffixNode, WordArray> ret = canonize(inputs, stringPart);
-        SuffixNode s = ret.getFirst();
-        WordArray str = ret.getSecond();
+        SuffixNode s = canonize(inputs, part_start, part_end);
+        int str_start = canonized_start;
+        int str_length = part_end - str_start;
 
-        if (str.get_length() > 0) {
-            Edge g = s.getEdge(str.get_index(0));
+        if (str_length > 0) {
+            Edge g = s.getEdge(word[str_start]);
 
             WordArray label = g.getLabel();
             // must see whether "str" is substring of the label of an edge
-            if ((label.get_length() > str.get_length()) && (label.get_index(str.get_length()) == t)) {
-                return new Pair<Boolean, SuffixNode>(true, s);
+            if ((label.get_length() > str_length) && (label.get_index(str_length) == t)) {
+                split_node = s;
+                return true;
             } else {
                 // need to split the edge
 
-                WordArray newlabel = getSubstring(label, str.get_length(), label.get_length());
-                WordArray str_copy = str;
-
-                assert (label.starts_with(str_copy) );
-
                 // build a new node
                 SuffixNode r = new InstanceNode();
                 // build a new edge
-                Edge newedge = new Edge(str_copy, r);
+                Edge newedge = new Edge(word, str_start, part_end, r);
 
-                g.setLabel(newlabel);
+                // the label is owned by g, cut its prefix in place
+                label.add_to_start_index(str_length);
 
                 // link s -> r
-                r.addEdge(newlabel.get_index(0), g);
-                s.addEdge(str.get_index(0), newedge);
+                r.addEdge(label.get_index(0), g);
+                s.addEdge(word[str_start], newedge);
 
-                return new Pair<Boolean, SuffixNode>(false, r);
+                split_node = r;
+                return false;
             }
 
         } else {
             Edge e = s.getEdge(t);
+            split_node = s;
             if (null == e) {
                 // if there is no t-transtion from s
-                return new Pair<Boolean, SuffixNode>(false, s);
+                return false;
             } else {
 
-                if (remainder.equal(e.getLabel())) {
+                WordArray e_label = e.getLabel();
+                int remainder_length = remainder_end - remainder_start;
+
+                if (remainder_length == e_label.get_length()
+                        && matches(remainder_start, e_label, remainder_length)) {
 
                     // update payload of destination node
                     //e.getDest().addRef(key);
                     if (fullStringNode == null){
                         fullStringNode = (SuffixNode)e.getDest();
                     }
-                    return new Pair<Boolean, SuffixNode>(true, s);
-                } else if (remainder.starts_with(e.getLabel())) {
-                    return new Pair<Boolean, SuffixNode>(true, s);
-                } else if (e.getLabel().starts_with(remainder)){
+                    return true;
+                } else if (remainder_length >= e_label.get_length()
+                        && matches(remainder_start, e_label, e_label.get_length())) {
+                    return true;
+                } else if (e_label.get_length() >= remainder_length
+                        && matches(remainder_start, e_label, remainder_length)){
                     // need to split as above
                     SuffixNode newNode = new InstanceNode();
                     //newNode.addRef(key);
@@ -297,93 +367,99 @@ public class GeneralizedSuffixTree  implements Serializable{
                         fullStringNode = newNode;
                     }
 
+                    Edge newEdge = new Edge(word, remainder_start, remainder_end, newNode);
 
-                    Edge newEdge = new Edge(copySeq(remainder), newNode);
-
-                    WordArray e_label = e.getLabel();
                     //e.setLabel(e.getLabel().substring(remainder.length())); --ORIGINAL CODE--
-
-                    WordArray e_label_substr = getSubstring(e_label, remainder.get_length(), e_label.get_length());
-                    //String label_str = e_label_substr.to_string(bitset_to_cog, index_to_char);
-
-                    e.setLabel( e_label_substr );
-                    newNode.addEdge(e_label_substr.get_index(0), e);
+                    e_label.add_to_start_index(remainder_length);
+                    newNode.addEdge(e_label.get_index(0), e);
 
                     s.addEdge(t, newEdge);
 
-                    return new Pair<Boolean, SuffixNode>(false, s);
+                    return false;
                 } else {
                     // they are different words. No prefix. but they may still share some common substr
-                    return new Pair<Boolean, SuffixNode>(true, s);
+                    return true;
                 }
             }
         }
 
     }
 
-
-
     /**
-     * Return a (Node, String) (n, remainder) pair such that n is a farthest descendant of
-     * s (the input node) that can be reached by following a path of edges denoting
-     * a prefix of inputstr and remainder will be string that must be
-     * appended to the concatenation of labels from s to n to get inpustr.
+     * @return true if word[start, start + length) equals the first length chars of label
      */
-    private Pair<SuffixNode, WordArray> canonize(final SuffixNode s, final WordArray inputstr) {
+    private boolean matches(int start, WordArray label, int length) {
+        for (int i = 0; i < length; i++) {
+            if (word[start + i] != label.get_index(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        if (inputstr.get_length()==0) {
-            return new Pair<SuffixNode, WordArray>(s, inputstr);
-        } else {
-            SuffixNode currentNode = s;
+    /**
+     * Return a node n such that n is a farthest descendant of s (the input node) that can be reached by following
+     * a path of edges denoting a prefix of inputstr = word[start, end).
+     * The start of the remainder, the string that must be appended to the concatenation of labels from s to n to get
+     * inputstr, is stored in canonized_start. The remainder ends at end.
+     */
+    private SuffixNode canonize(final SuffixNode s, int start, final int end) {
 
-            WordArray str = copySeq(inputstr);
+        SuffixNode currentNode = s;
+        if (start < end) {
             //Edge g = s.getEdge(str.charAt(0)); --ORIGINAL CODE--
-            Edge g = s.getEdge(str.get_index(0));
+            Edge g = s.getEdge(word[start]);
             // descend the tree as long as a proper label is found
             //while (g != null && str.startsWith(g.getLabel())) { --ORIGINAL CODE--
-            while (g != null && str.starts_with(g.getLabel())) {
+            while (g != null && end - start >= g.getLabel().get_length()
+                    && matches(start, g.getLabel(), g.getLabel().get_length())) {
                 //str = str.substring(g.getLabel().length());
-                str.add_to_start_index(g.getLabel().get_length());
+                start += g.getLabel().get_length();
                 currentNode = (SuffixNode)g.getDest();
-                if (str.get_length() > 0) {
-                    g = currentNode.getEdge(str.get_index(0));
+                if (start < end) {
+                    g = currentNode.getEdge(word[start]);
+                } else {
+                    g = null;
                 }
             }
-
-            return new Pair<SuffixNode, WordArray>(currentNode, str);
         }
+
+        canonized_start = start;
+        return currentNode;
     }
 
 
         /**
-         * Updates the tree starting from inputNode and by adding stringPart.
+         * Updates the tree starting from inputNode and by adding stringPart = word[part_start, part_end).
          *
          * Returns a reference (Node, String) pair for the string that has been added so far.
          * This means:
          * - the Node will be the Node that can be reached by the longest path string (S1)
          *   that can be obtained by concatenating consecutive edges in the tree and
-         *   that is a substring of the string added so far to the tree.
+         *   that is a substring of the string added so far to the tree. It is the returned value.
          * - the String will be the remainder that must be added to S1 to get the string
-         *   added so far.
+         *   added so far. It is stored in word[active_start, active_end).
          *
          * @param inputNode the node to start from
-         * @param stringPart the string to add to the tree
-         * @param rest the rest of the string
+         * @param part_start start of the string to add to the tree, in word
+         * @param part_end end of the string to add to the tree, exclusive
+         * @param rest_start start of the rest of the string, in word
+         * @param rest_end end of the rest of the string, exclusive
          */
-        private Pair<SuffixNode, WordArray> update (SuffixNode inputNode, WordArray stringPart, WordArray rest){
+        private SuffixNode update (SuffixNode inputNode, int part_start, int part_end, int rest_start, int rest_end){
             SuffixNode s = inputNode;
 
-            WordArray tempstr = stringPart;
+            // tempstr is word[temp_start, temp_end)
+            int temp_start = part_start;
+            int temp_end = part_end;
 
-            int newChar = stringPart.get_index(stringPart.get_length() - 1);
+            int newChar = word[part_end - 1];
 
             // line 1
             SuffixNode oldroot = root;
 
-            Pair<Boolean, SuffixNode> ret = testAndSplit(s, getSubstring(tempstr, 0, tempstr.get_length()-1), newChar, rest/*, key, index*/);
-
-            SuffixNode r = ret.getSecond();
-            boolean endpoint = ret.getFirst();
+            boolean endpoint = testAndSplit(s, temp_start, temp_end - 1, newChar, rest_start, rest_end);
+            SuffixNode r = split_node;
 
             SuffixNode leaf;
             // line 2
@@ -403,7 +479,7 @@ public class GeneralizedSuffixTree  implements Serializable{
                         fullStringNode = leaf;
                     }
 
-                    Edge newedge = new Edge(rest, leaf);
+                    Edge newedge = new Edge(word, rest_start, rest_end, leaf);
                     r.addEdge(newChar, newedge);
                 }
 
@@ -425,24 +501,23 @@ public class GeneralizedSuffixTree  implements Serializable{
                 if (null == s.getSuffix()) { // root node
                     assert (root == s);
                     // this is a special case to handle what is referred to as node _|_ on the paper
-                    tempstr.set_start_index(tempstr.get_start_index() + 1);
+                    temp_start++;
 
                 } else {
                     // cut last char from tempstr and canonize
-                    Pair<SuffixNode, WordArray> canret = canonize(s.getSuffix(), safeCutLastChar(tempstr));
-                    s = canret.getFirst();
-                    // use intern to ensure that tempstr is a reference from the string pool
+                    int cut_end = safeCutLastChar(temp_start, temp_end);
+                    s = canonize(s.getSuffix(), temp_start, cut_end);
                     //tempstr = (canret.getSecond() + tempstr.charAt(tempstr.length() - 1)).intern(); --ORIGINAL CODE--
-                    tempstr = canret.getSecond();
-                    tempstr.add_to_end_index(1);
+                    temp_start = canonized_start;
+                    temp_end = cut_end + 1;
                 }
 
                 // line 7
                 // ret = testAndSplit(s, safeCutLastChar(tempstr), newChar, rest, value); --ORIGINAL CODE--
 
-                ret = testAndSplit(s, safeCutLastChar(tempstr), newChar, rest/*, key, index*/);
-                r = ret.getSecond();
-                endpoint = ret.getFirst();
+                endpoint = testAndSplit(s, temp_start, safeCutLastChar(temp_start, temp_end), newChar,
+                                        rest_start, rest_end);
+                r = split_node;
 
             }
 
@@ -450,9 +525,10 @@ public class GeneralizedSuffixTree  implements Serializable{
             if (oldroot != root) {
                 oldroot.setSuffix(r);
             }
-            oldroot = root;
 
-            return new Pair<SuffixNode, WordArray>(s, tempstr);
+            active_start = temp_start;
+            active_end = temp_end;
+            return s;
         }
 
 
@@ -460,47 +536,10 @@ public class GeneralizedSuffixTree  implements Serializable{
 
 
 
-    public int computeCount() {
-        return ((InstanceNode)root).computeAndCacheCount();
-    }
-
-
-    private WordArray copySeq(WordArray seq){
-        return new WordArray(seq.wordArray, seq.get_start_index(), seq.get_end_index());
-    }
-    //works as the regular substring
-    private WordArray getSubstring(WordArray seq, int start_index, int end_index) {
-        return new WordArray(seq.wordArray, seq.get_start_index()+start_index, seq.get_start_index() + end_index );
-    }
-
-    private WordArray safeCutLastChar(WordArray seq) {
-        WordArray seq_substr = new WordArray(seq.wordArray, seq.get_start_index(), seq.get_end_index());
-        if (seq_substr.get_length() > 0) {
-            seq_substr.add_to_end_index(-1);
-        }
-        return seq_substr;
-    }
-
-
     /**
-     * A private class used to return a tuples of two elements
+     * @return the end index of word[start, end) without its last char, if it is not empty
      */
-    private class Pair<A, B> {
-
-        private final A first;
-        private final B second;
-
-        public Pair(A first, B second) {
-            this.first = first;
-            this.second = second;
-        }
-
-        public A getFirst() {
-            return first;
-        }
-
-        public B getSecond() {
-            return second;
-        }
+    private int safeCutLastChar(int start, int end) {
+        return end > start ? end - 1 : end;
     }
 }
@@ -0,0 +1,325 @@
+package SuffixTrees;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map from int keys (chars of the alphabet) to the children of a tree node.
+ *
+ * Most nodes of the data tree and of the pattern tree have 1-3 children, so up to INLINE_CAPACITY entries are kept in
+ * fields of the map itself. Larger maps keep their keys in a sorted int array, and are searched by binary search.
+ * Keys are never boxed, unless the map is used through the java.util.Map interface.
+ * Entries are always iterated by ascending key, use size(), keyAt(i) and valueAt(i) to iterate without allocations.
+ *
+ * @param <V> type of the children
+ */
+public class IntMap<V> extends AbstractMap<Integer, V> {
+
+    private static final int INLINE_CAPACITY = 3;
+
+    private int size;
+
+    //entries of a small map, sorted by key
+    private int key0;
+    private int key1;
+    private int key2;
+    private V value0;
+    private V value1;
+    private V value2;
+
+    //entries of a large map, sorted by key. null as long as the map is small
+    private int[] keys;
+    private Object[] values;
+
+    public IntMap(){
+        size = 0;
+        keys = null;
+        values = null;
+    }
+
+    /**
+     * Shallow copy
+     * @param other
+     */
+    public IntMap(IntMap<V> other){
+        size = other.size;
+        key0 = other.key0;
+        key1 = other.key1;
+        key2 = other.key2;
+        value0 = other.value0;
+        value1 = other.value1;
+        value2 = other.value2;
+        if (other.keys != null) {
+            keys = Arrays.copyOf(other.keys, other.keys.length);
+            values = Arrays.copyOf(other.values, other.values.length);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of an entry, 0 <= i < size()
+     * @return the i-th smallest key
+     */
+    public int keyAt(int i){
+        if (keys != null) {
+            return keys[i];
+        }
+        switch (i) {
+            case 0:
+                return key0;
+            case 1:
+                return key1;
+            default:
+                return key2;
+        }
+    }
+
+    /**
+     * @param i index of an entry, 0 <= i < size()
+     * @return the value of the i-th smallest key
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int i){
+        if (values != null) {
+            return (V) values[i];
+        }
+        switch (i) {
+            case 0:
+                return value0;
+            case 1:
+                return value1;
+            default:
+                return value2;
+        }
+    }
+
+    private void setValueAt(int i, V value){
+        if (values != null) {
+            values[i] = value;
+            return;
+        }
+        switch (i) {
+            case 0:
+                value0 = value;
+                break;
+            case 1:
+                value1 = value;
+                break;
+            default:
+                value2 = value;
+        }
+    }
+
+    private void setAt(int i, int key, V value){
+        if (keys != null) {
+            keys[i] = key;
+            values[i] = value;
+            return;
+        }
+        switch (i) {
+            case 0:
+                key0 = key;
+                value0 = value;
+                break;
+            case 1:
+                key1 = key;
+                value1 = value;
+                break;
+            default:
+                key2 = key;
+                value2 = value;
+        }
+    }
+
+    /**
+     * Same contract as Arrays.binarySearch
+     * @return the index of key if it is in the map, otherwise (-(insertion point) - 1)
+     */
+    private int indexOf(int key){
+        if (keys != null) {
+            return Arrays.binarySearch(keys, 0, size, key);
+        }
+        for (int i = 0; i < size; i++) {
+            int curr_key = keyAt(i);
+            if (curr_key == key) {
+                return i;
+            }
+            if (curr_key > key) {
+                return -i - 1;
+            }
+        }
+        return -size - 1;
+    }
+
+    /**
+     * @return the value of key, null if there is no such key
+     */
+    public V get(int key){
+        int i = indexOf(key);
+        return i >= 0 ? valueAt(i) : null;
+    }
+
+    public boolean containsKey(int key){
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return the previous value of key, null if there was no such key
+     */
+    public V put(int key, V value){
+        int i = indexOf(key);
+        if (i >= 0) {
+            V prev = valueAt(i);
+            setValueAt(i, value);
+            return prev;
+        }
+        insertAt(-i - 1, key, value);
+        return null;
+    }
+
+    private void insertAt(int index, int key, V value){
+        if (keys == null && size == INLINE_CAPACITY) {
+            //move the entries from the fields to arrays
+            keys = new int[INLINE_CAPACITY * 2];
+            values = new Object[INLINE_CAPACITY * 2];
+            keys[0] = key0;
+            keys[1] = key1;
+            keys[2] = key2;
+            values[0] = value0;
+            values[1] = value1;
+            values[2] = value2;
+            value0 = null;
+            value1 = null;
+            value2 = null;
+        }
+        if (keys != null) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+        } else {
+            for (int i = size; i > index; i--) {
+                setAt(i, keyAt(i - 1), valueAt(i - 1));
+            }
+        }
+        size++;
+        setAt(index, key, value);
+    }
+
+    /**
+     * @return the removed value, null if there was no such key
+     */
+    public V remove(int key){
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        V prev = valueAt(i);
+        removeAt(i);
+        return prev;
+    }
+
+    private void removeAt(int index){
+        if (keys != null) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            values[size - 1] = null;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                setAt(i, keyAt(i + 1), valueAt(i + 1));
+            }
+            setAt(size - 1, 0, null);
+        }
+        size--;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        value0 = null;
+        value1 = null;
+        value2 = null;
+        keys = null;
+        values = null;
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Entry<Integer, V>>() {
+            @Override
+            public Iterator<Entry<Integer, V>> iterator() {
+                return new Iterator<Entry<Integer, V>>() {
+                    private int next = 0;
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<Integer, V> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next++;
+                        return new SimpleEntry<Integer, V>(keyAt(last), valueAt(last)) {
+                            private final int index = last;
+
+                            @Override
+                            public V setValue(V value) {
+                                setValueAt(index, value);
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        removeAt(last);
+                        next = last;
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
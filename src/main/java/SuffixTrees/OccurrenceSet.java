@@ -0,0 +1,144 @@
+package SuffixTrees;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The occurrences of all the instances of a pattern, as a union of intervals of the DFS-ordered occurrences of the
+ * data tree.
+ *
+ * The occurrences of an instance are the interval of the data tree node it ends in (or of the node below the edge it
+ * ends in). Intervals of data tree nodes are either nested or disjoint, so an interval that is already covered is found
+ * by binary search and adds nothing.
+ * The genomes of the occurrences are read only when they are needed, once for the whole union. If the union is the
+ * interval of a single node, the number of genomes is the count_by_keys of the node and no occurrence is read.
+ */
+public class OccurrenceSet {
+    private FlatSuffixTree data_tree;
+    /**
+     * Disjoint, non adjacent intervals [starts[i], ends[i]) sorted by start, null as long as the set is empty
+     */
+    private int[] starts;
+    private int[] ends;
+    private int size;
+    /**
+     * The node whose interval is the whole union, FlatSuffixTree.NONE if there is no such node
+     */
+    private int single_node;
+
+    /**
+     * The number of different genomes of the occurrences in the set, -1 if intervals were added since it was computed
+     */
+    private int genomes_count;
+
+    public OccurrenceSet(){
+        data_tree = null;
+        starts = null;
+        ends = null;
+        size = 0;
+        single_node = FlatSuffixTree.NONE;
+        genomes_count = -1;
+    }
+
+    /**
+     * Adds the occurrences of data tree node to the set
+     * @param data_tree
+     * @param node
+     */
+    public void add(FlatSuffixTree data_tree, int node){
+        this.data_tree = data_tree;
+        int from = data_tree.getOccurrencesFrom(node);
+        int to = data_tree.getOccurrencesTo(node);
+        if (from == to) {
+            return;
+        }
+
+        //intervals lo to hi-1 overlap or touch [from, to)
+        int lo = firstEndingFrom(from);
+        int hi = lo;
+        while (hi < size && starts[hi] <= to) {
+            hi++;
+        }
+        if (hi - lo == 1 && starts[lo] <= from && ends[lo] >= to) {
+            return;
+        }
+
+        int merged_start = from;
+        int merged_end = to;
+        if (hi > lo) {
+            merged_start = Math.min(from, starts[lo]);
+            merged_end = Math.max(to, ends[hi - 1]);
+        }
+        replace(lo, hi, merged_start, merged_end);
+
+        if (size == 1 && merged_start == from && merged_end == to) {
+            single_node = node;
+        } else {
+            single_node = FlatSuffixTree.NONE;
+        }
+        genomes_count = -1;
+    }
+
+    /**
+     * @return the number of different genomes of the occurrences in the set
+     */
+    public int getGenomesCount(){
+        if (size == 0) {
+            return 0;
+        }
+        if (single_node != FlatSuffixTree.NONE) {
+            return data_tree.getCount_by_keys(single_node);
+        }
+        if (genomes_count == -1) {
+            //genome keys are dense (0 to number_of_genomes - 1), bit k is set if genome k has an occurrence
+            BitSet genomes = new BitSet();
+            for (int interval = 0; interval < size; interval++) {
+                for (int i = starts[interval]; i < ends[interval]; i++) {
+                    genomes.set(data_tree.getOccurrenceKey(i));
+                }
+            }
+            genomes_count = genomes.cardinality();
+        }
+        return genomes_count;
+    }
+
+    /**
+     * @param from
+     * @return the first interval whose end is at least from, size if there is none
+     */
+    private int firstEndingFrom(int from){
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Replaces the intervals lo to hi-1 with [start, end)
+     */
+    private void replace(int lo, int hi, int start, int end){
+        if (starts == null) {
+            starts = new int[2];
+            ends = new int[2];
+        }
+        int new_size = size - (hi - lo) + 1;
+        if (new_size > starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        if (hi - lo != 1) {
+            System.arraycopy(starts, hi, starts, lo + 1, size - hi);
+            System.arraycopy(ends, hi, ends, lo + 1, size - hi);
+        }
+        starts[lo] = start;
+        ends[lo] = end;
+        size = new_size;
+    }
+}
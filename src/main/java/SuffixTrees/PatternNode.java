@@ -1,14 +1,12 @@
 package SuffixTrees;
 
-import Utils.Instance;
-
-import java.util.*;
+import Utils.InstanceList;
 
 /**
  * Represents a node in the pattern tree
  */
 public class PatternNode {
-    private Map<Integer, PatternNode> target_nodes;
+    private IntMap<PatternNode> target_nodes;
     /**
      * Contains the key of the string concatenation from the root
      */
@@ -20,45 +18,46 @@ public class PatternNode {
 
     private PatternNode suffix;
 
-    private int substring_length;
-
     /**
-     * The concat of labels from root to this node
-     * e.g. COG1209 COG1088 COG1091 COG 4723
+     * The length of the concat of labels from root to this node
      */
-    private String substring;
+    private int substring_length;
 
     /**
      * Saves instances of the pattern that starts in the root and ends in this node
      */
-    private List<Instance> Instances;
+    private InstanceList Instances;
     /**
-     * Saves all different keys of strings that the pattern has an instance in.
-     * (union of getResult from all instance nodes)
+     * Union of the occurrences of all instance nodes, holds all different keys of strings that the pattern has an
+     * instance in
      */
-    private Set InstanceKeys;
+    private OccurrenceSet occurrences;
     /**
      * Saves number of instances of the pattern (including multiple instances in the same input string)
      */
     private int instanceIndexCount;
+    /**
+     * Sum of the number of different keys of each instance node, an upper bound of the number of keys of the pattern
+     */
+    private int instanceKeysSum;
 
     private double p_val;
 
     private int exact_instance_count;
 
     public PatternNode(TreeType type){
-        target_nodes = new HashMap<Integer, PatternNode>();
+        target_nodes = new IntMap<PatternNode>();
         suffix = null;
 
         pattern_key = -1;
         copy_count = 0;
         this.type = type;
 
-        Instances = new ArrayList<Instance>();
-        InstanceKeys = new HashSet();
+        Instances = new InstanceList();
+        occurrences = new OccurrenceSet();
         instanceIndexCount = 0;
+        instanceKeysSum = 0;
 
-        substring = "";
         substring_length = 0;
 
         p_val = 0;
@@ -66,25 +65,22 @@ public class PatternNode {
     }
 
     public PatternNode(PatternNode other){
-        substring = other.getSubstring();
         substring_length = other.getSubstring_length();
         pattern_key = other.getPatternKey();
         copy_count = other.getCopy_count()+1;
         type = other.type;
         suffix = other.getSuffix();
 
-        Instances = new ArrayList<Instance>();
-        InstanceKeys = new HashSet();
+        Instances = new InstanceList();
+        occurrences = new OccurrenceSet();
 
         p_val = 0;
         exact_instance_count = 0;
 
-        Map<Integer, PatternNode> other_target_nodes = other.getTarget_nodes();
-        target_nodes = new HashMap<Integer, PatternNode>(other_target_nodes.size());
-        target_nodes.putAll(other_target_nodes);
+        target_nodes = new IntMap<PatternNode>(other.getTarget_nodes());
     }
 
-    public Map<Integer, PatternNode> getTarget_nodes(){
+    public IntMap<PatternNode> getTarget_nodes(){
         return target_nodes;
     }
     public int getSubstring_length() {
@@ -130,34 +126,43 @@ public class PatternNode {
         return copy_count;
     }
 
-    public void addInstance(Instance instance, int max_insertion){
+    /**
+     * Adds an instance of the pattern, see InstanceList.add.
+     * An instance in the same position as an existing instance adds no occurrences, and only the one with the smaller
+     * errors, deletions and insertions is kept
+     * @return false if the instance was not added
+     */
+    public boolean addInstance(FlatSuffixTree data_tree, int node, int edge, int edge_index, int error, int deletions,
+                               int insertions, int length){
 
-        Instances.add(instance);
-        InstanceNode instance_node;
-        if (instance.getEdge() == null) {
-            instance_node = instance.getNodeInstance();
-            addOccKeys(instance_node.getResults().keySet());
-        } else {//we are in the middle of the edge, the instance is a suffix of edge.getDest()
-            instance_node = (InstanceNode)instance.getEdge().getDest();
-            addOccKeys(instance_node.getResults().keySet());
+        if (!Instances.add(data_tree, node, edge, edge_index, error, deletions, insertions, length)) {
+            return false;
         }
-        incrementInstanceCount(instance_node.getCount_by_indexes());
+        int instance_node;
+        if (edge == FlatSuffixTree.NONE) {
+            instance_node = node;
+        } else {//we are in the middle of the edge, the instance is a suffix of the node below the edge
+            instance_node = edge;
+        }
+        occurrences.add(data_tree, instance_node);
+        incrementInstanceCount(data_tree.getCount_by_indexes(instance_node));
+        instanceKeysSum += data_tree.getCount_by_keys(instance_node);
+        return true;
     }
 
-    public List<Instance> getInstances(){
+    public InstanceList getInstances(){
         return Instances;
     }
 
-    public void addOccKeys(Set<Integer> keys){
-        InstanceKeys.addAll(keys);
-    }
-
     public int getInstanceKeysSize(){
-        return InstanceKeys.size();
+        return occurrences.getGenomesCount();
     }
 
-    public Set<Integer> getInstanceKeys(){
-        return InstanceKeys;
+    /**
+     * @return an upper bound of getInstanceKeysSize() that is updated with each instance, without reading occurrences
+     */
+    public int getInstanceKeysSum(){
+        return instanceKeysSum;
     }
 
     public int getInstanceIndexCount(){
@@ -168,13 +173,6 @@ public class PatternNode {
         instanceIndexCount += val;
     }
 
-    public void setSubstring(String substr){
-        substring = substr;
-    }
-    public String getSubstring(){
-        return substring;
-    }
-
     public double getP_val() {
         return p_val;
     }
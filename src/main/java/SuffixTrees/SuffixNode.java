@@ -1,8 +1,5 @@
 package SuffixTrees;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Created by ASUS on 7/20/2016.
  */
@@ -18,7 +15,7 @@ public class SuffixNode{
      * The set of edges starting from this node
      * used in suffix and enumeration tree
      */
-    private final Map<Integer, Edge> edges;
+    private final IntMap<Edge> edges;
 
     /**
      * The concat of labels from root to this node
@@ -37,7 +34,7 @@ public class SuffixNode{
         return edges.get(ch);
     }
 
-    public Map<Integer, Edge> getEdges() {
+    public IntMap<Edge> getEdges() {
         return edges;
     }
 
@@ -53,7 +50,7 @@ public class SuffixNode{
 
         suffix = null;
 
-        edges = new HashMap<Integer, Edge>();
+        edges = new IntMap<Edge>();
         substring = "";
         substring_length = 0;
     }
@@ -66,12 +63,10 @@ public class SuffixNode{
         substring = other.getSubstring();
         substring_length = other.getSubstring_length();
 
-        Map<Integer, Edge> other_edges = other.getEdges();
-        edges = new HashMap<Integer, Edge>(other_edges.size());
-        for (Map.Entry<Integer, Edge> entry : other_edges.entrySet()) {
-            int ch = entry.getKey();
-            Edge edge = entry.getValue();
-            addEdge(ch, new Edge(edge));
+        IntMap<Edge> other_edges = other.getEdges();
+        edges = new IntMap<Edge>();
+        for (int i = 0; i < other_edges.size(); i++) {
+            addEdge(other_edges.keyAt(i), new Edge(other_edges.valueAt(i)));
         }
     }
 
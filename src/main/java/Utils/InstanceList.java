@@ -0,0 +1,228 @@
+package Utils;
+
+import SuffixTrees.FlatSuffixTree;
+
+import java.util.Arrays;
+
+/**
+ * The instances of a pattern in the data tree, kept as records of ints in one array instead of an object per instance.
+ *
+ * Instance i starts from the root of the data tree and ends in node getNode(i), or, if getEdge(i) is not
+ * FlatSuffixTree.NONE, at index getEdgeIndex(i) of the label of the edge that enters getEdge(i).
+ * Only the number of insertions of an instance is kept, not their positions.
+ *
+ * Two instances that end in the same position can be extended the same way, so if one of them has at most the
+ * errors, deletions and insertions of the other, only that one is kept. Instances with insertions only are never in the
+ * same position (an inserted char differs from the next char of the pattern, so a string has one such alignment to
+ * the pattern), so positions are compared only once an instance with errors or deletions was added.
+ * The instances are looked up by position with a linear scan while the list is short, and with a hash table of their
+ * positions once it grows.
+ */
+public class InstanceList {
+    private static final int NODE = 0;
+    private static final int EDGE = 1;
+    private static final int EDGE_INDEX = 2;
+    private static final int ERROR = 3;
+    private static final int DELETIONS = 4;
+    private static final int INSERTIONS = 5;
+    private static final int LENGTH = 6;
+    /**
+     * Number of ints in the record of an instance
+     */
+    private static final int RECORD_SIZE = 7;
+    /**
+     * Size of the list from which a hash table of positions is kept
+     */
+    private static final int MIN_INDEXED_SIZE = 16;
+
+    /**
+     * The data tree that contains the instances
+     */
+    private FlatSuffixTree data_tree;
+    /**
+     * The record of instance i is instances[i * RECORD_SIZE, (i + 1) * RECORD_SIZE), null as long as the list is empty
+     */
+    private int[] instances;
+    private int size;
+    /**
+     * Open addressing hash table of instance index + 1 by position, 0 marks an empty slot.
+     * null as long as size < MIN_INDEXED_SIZE
+     */
+    private int[] positions;
+    /**
+     * True if an instance with errors or deletions was added
+     */
+    private boolean has_errors;
+
+    public InstanceList(){
+        data_tree = null;
+        instances = null;
+        size = 0;
+        positions = null;
+        has_errors = false;
+    }
+
+    /**
+     * @param data_tree the data tree that contains the instance
+     * @param node
+     * @param edge outgoing edge from node, represented by the node it enters. FlatSuffixTree.NONE if the instance ends
+     *             in node
+     * @param edge_index the index of the last char of the instance in the label of edge, -1 if it ends in node
+     * @param error
+     * @param deletions
+     * @param insertions
+     * @param length
+     * @return false if there is already an instance in this position, the instance either replaced it or was dropped
+     */
+    public boolean add(FlatSuffixTree data_tree, int node, int edge, int edge_index, int error, int deletions,
+                       int insertions, int length){
+        this.data_tree = data_tree;
+
+        if (error > 0 || deletions > 0) {
+            has_errors = true;
+        }
+        int same_position = has_errors ? find(node, edge, edge_index) : -1;
+        if (same_position != -1) {
+            int record = same_position * RECORD_SIZE;
+            if (error <= instances[record + ERROR] && deletions <= instances[record + DELETIONS]
+                    && insertions <= instances[record + INSERTIONS]) {
+                instances[record + ERROR] = error;
+                instances[record + DELETIONS] = deletions;
+                instances[record + INSERTIONS] = insertions;
+                instances[record + LENGTH] = length;
+                return false;
+            }
+            if (instances[record + ERROR] <= error && instances[record + DELETIONS] <= deletions
+                    && instances[record + INSERTIONS] <= insertions) {
+                return false;
+            }
+        }
+
+        if (instances == null) {
+            instances = new int[RECORD_SIZE * 2];
+        } else if (size * RECORD_SIZE == instances.length) {
+            instances = Arrays.copyOf(instances, instances.length * 2);
+        }
+        int record = size * RECORD_SIZE;
+        instances[record + NODE] = node;
+        instances[record + EDGE] = edge;
+        instances[record + EDGE_INDEX] = edge_index;
+        instances[record + ERROR] = error;
+        instances[record + DELETIONS] = deletions;
+        instances[record + INSERTIONS] = insertions;
+        instances[record + LENGTH] = length;
+        size++;
+
+        if (positions != null) {
+            if (size * 4 > positions.length * 3) {
+                rehash(positions.length * 2);
+            } else {
+                insertPosition(size - 1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of an instance that ends in this position, -1 if there is none
+     */
+    private int find(int node, int edge, int edge_index){
+        if (positions == null && size >= MIN_INDEXED_SIZE) {
+            rehash(Integer.highestOneBit(size) * 2);
+        }
+        if (positions == null) {
+            for (int i = 0; i < size; i++) {
+                if (samePosition(i, node, edge, edge_index)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = positions.length - 1;
+        for (int slot = hash(node, edge, edge_index) & mask; positions[slot] != 0; slot = (slot + 1) & mask) {
+            if (samePosition(positions[slot] - 1, node, edge, edge_index)) {
+                return positions[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean samePosition(int i, int node, int edge, int edge_index){
+        int record = i * RECORD_SIZE;
+        return instances[record + NODE] == node && instances[record + EDGE] == edge
+                && instances[record + EDGE_INDEX] == edge_index;
+    }
+
+    private static int hash(int node, int edge, int edge_index){
+        int h = (node * 31 + edge) * 31 + edge_index;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int capacity){
+        positions = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            insertPosition(i);
+        }
+    }
+
+    private void insertPosition(int i){
+        int record = i * RECORD_SIZE;
+        int mask = positions.length - 1;
+        int slot = hash(instances[record + NODE], instances[record + EDGE], instances[record + EDGE_INDEX]) & mask;
+        while (positions[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        positions[slot] = i + 1;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public FlatSuffixTree getDataTree(){
+        return data_tree;
+    }
+
+    public int getNode(int i){
+        return instances[i * RECORD_SIZE + NODE];
+    }
+
+    public int getEdge(int i){
+        return instances[i * RECORD_SIZE + EDGE];
+    }
+
+    public int getEdgeIndex(int i){
+        return instances[i * RECORD_SIZE + EDGE_INDEX];
+    }
+
+    public int getError(int i){
+        return instances[i * RECORD_SIZE + ERROR];
+    }
+
+    public int getDeletions(int i){
+        return instances[i * RECORD_SIZE + DELETIONS];
+    }
+
+    public int getInsertions(int i){
+        return instances[i * RECORD_SIZE + INSERTIONS];
+    }
+
+    public int getLength(int i){
+        return instances[i * RECORD_SIZE + LENGTH];
+    }
+
+    /**
+     * @return the node that instance i ends in, or the node below the edge that it ends in
+     */
+    public int getSubtreeNode(int i){
+        int edge = getEdge(i);
+        if (edge != FlatSuffixTree.NONE) {
+            return edge;
+        }
+        return getNode(i);
+    }
+}
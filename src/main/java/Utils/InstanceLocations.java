@@ -0,0 +1,116 @@
+package Utils;
+
+import SuffixTrees.FlatSuffixTree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The locations of all the instances of a pattern, grouped by the sequence (genome) they are located in.
+ *
+ * A location is kept as the index of an occurrence in the data tree and the length of its instance, the replicon,
+ * start index, end index and strand of each location are read through a Cursor.
+ */
+public class InstanceLocations {
+    private FlatSuffixTree data_tree;
+    /**
+     * key = genome id
+     * value = the locations in the genome, in the order of the instances of the pattern
+     */
+    private Map<Integer, LocationList> genome_to_locations;
+
+    public InstanceLocations(Pattern pattern){
+        InstanceList instances = pattern.get_instances();
+        data_tree = instances.getDataTree();
+        genome_to_locations = new HashMap<>();
+        for (int instance = 0; instance < instances.size(); instance++) {
+
+            int instance_length = instances.getLength(instance);
+            int subtree_node = instances.getSubtreeNode(instance);
+            for (int i = data_tree.getOccurrencesFrom(subtree_node); i < data_tree.getOccurrencesTo(subtree_node); i++) {
+                int seq_key = data_tree.getOccurrenceKey(i);
+
+                LocationList locations = genome_to_locations.get(seq_key);
+                if (locations == null) {
+                    locations = new LocationList();
+                    genome_to_locations.put(seq_key, locations);
+                }
+                locations.add(i, instance_length);
+            }
+        }
+    }
+
+    /**
+     * @return the keys of the genomes that contain an instance
+     */
+    public Set<Integer> getGenomes(){
+        return genome_to_locations.keySet();
+    }
+
+    /**
+     * @param genome a key returned by getGenomes()
+     * @return a cursor before the first location in genome
+     */
+    public Cursor getLocations(int genome){
+        return new Cursor(genome_to_locations.get(genome));
+    }
+
+    private static class LocationList {
+        private int[] occurrences = new int[4];
+        private int[] lengths = new int[4];
+        private int size = 0;
+
+        private void add(int occurrence, int length){
+            if (size == occurrences.length) {
+                occurrences = Arrays.copyOf(occurrences, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            occurrences[size] = occurrence;
+            lengths[size] = length;
+            size++;
+        }
+    }
+
+    /**
+     * Iterates the locations of one genome: call next() before reading each location
+     */
+    public class Cursor {
+        private final LocationList locations;
+        private int index;
+
+        private Cursor(LocationList locations){
+            this.locations = locations;
+            index = -1;
+        }
+
+        /**
+         * Moves to the next location
+         * @return false if there are no more locations
+         */
+        public boolean next(){
+            index++;
+            return index < locations.size;
+        }
+
+        public int getRepliconId(){
+            return data_tree.getOccurrenceRepliconId(locations.occurrences[index]);
+        }
+
+        public int getStrand(){
+            return data_tree.getOccurrenceStrand(locations.occurrences[index]);
+        }
+
+        public int getStartIndex(){
+            return data_tree.getOccurrenceStartIndex(locations.occurrences[index]);
+        }
+
+        /**
+         * @return the index of the last gene of the instance
+         */
+        public int getEndIndex(){
+            return getStartIndex() + (locations.lengths[index] - 1) * getStrand();
+        }
+    }
+}
@@ -20,7 +20,7 @@ public class Pattern {
     private int instance_count;
 
     private int length;
-    private List<Instance> instances;
+    private InstanceList instances;
 
     private int exact_instance_count;
 
@@ -30,14 +30,17 @@ public class Pattern {
 
     private String familyId;
 
-    public Pattern(int pattern_id, String pattern, String[] pattern_arr, int length, Set<Integer> seq_keys,
-                   List<Instance> instances, int exact_instance_count){
+    /**
+     * @param instance_count number of different input sequences that the pattern has an instance in
+     */
+    public Pattern(int pattern_id, String pattern, String[] pattern_arr, int length, int instance_count,
+                   InstanceList instances, int exact_instance_count){
         this.pattern_id = pattern_id;
         this.pattern = pattern;
         this.pattern_arr = pattern_arr;
         this.length = length;
         this.instances = instances;
-        instance_count = seq_keys.size();
+        this.instance_count = instance_count;
         this.exact_instance_count = exact_instance_count;
         score = 0;
         main_functional_category = "";
@@ -52,7 +55,7 @@ public class Pattern {
         return pattern_id;
     }
 
-    public List<Instance> get_instances(){
+    public InstanceList get_instances(){
         return instances;
     }
 
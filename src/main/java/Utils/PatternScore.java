@@ -15,9 +15,19 @@ import static org.apache.commons.math3.util.ArithmeticUtils.binomialCoefficient;
 public class PatternScore {
 
     /**
-     * Array used for memoization, as each patterns with the same length have the same basic q_val
+     * Memoization of q_insert, as each patterns with the same length have the same basic q_val.
+     * Patterns are scored concurrently by the enumeration and the pattern pipeline, so each thread has its own memo
      */
-    double[] q_vals;
+    private final ThreadLocal<QValsMemo> q_vals_memo;
+    /**
+     * The maximal pattern length that q_vals are computed for
+     */
+    private final int max_genome_size;
+    /**
+     * bound_q_vals[w] is q_insert of a pattern of length w, or infinity if it is not positive (the score is 0).
+     * null until initScoreBound is called
+     */
+    double[] bound_q_vals;
     /**
      * Total number of input genomes
      */
@@ -35,7 +45,8 @@ public class PatternScore {
                         Map<String, Set<Integer>> cog_to_containing_genomes,
                         Map<Integer, Map<String, Integer>> genome_to_cog_paralog_count){
 
-        q_vals = new double[max_genome_size+1];
+        this.max_genome_size = max_genome_size;
+        q_vals_memo = ThreadLocal.withInitial(QValsMemo::new);
         this.number_of_genomes = number_of_genomes;
         this.cog_to_containing_genomes = cog_to_containing_genomes;
         this.genome_to_cog_paralog_count = genome_to_cog_paralog_count;
@@ -72,6 +83,46 @@ public class PatternScore {
                 average_paralog_count, pattern_occs_keys_size);
     }
 
+    /**
+     * Prepares maxPatternScore
+     * @param max_length maximal length of a pattern
+     * @param max_insertions maximal number of allowed insertions
+     */
+    public void initScoreBound(int max_length, int max_insertions){
+        bound_q_vals = new double[Math.min(max_length, max_genome_size) + 1];
+        for (int w = 0; w < bound_q_vals.length; w++) {
+            double q = w < 2 ? 0 : q_insert(avg_genome_size, w, max_insertions);
+            bound_q_vals[w] = q > 0 ? q : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * An upper bound of the score of every pattern of length min_length to max_length, that has an instance in at
+     * most pattern_occs_keys_size genomes.
+     *
+     * The score decreases with q, which is at least q_insert of the pattern length (the paralog product is at least 1),
+     * and every branch of pval_cross_genome is at most -log(P(X >= g)), which decreases with g.
+     *
+     * @param min_length
+     * @param max_length at most the max_length given to initScoreBound
+     * @param pattern_occs_keys_size
+     * @return
+     */
+    public double maxPatternScore(int min_length, int max_length, int pattern_occs_keys_size){
+        double min_q = Double.POSITIVE_INFINITY;
+        for (int w = Math.max(min_length, 2); w <= Math.min(max_length, bound_q_vals.length - 1); w++) {
+            min_q = Math.min(min_q, bound_q_vals[w]);
+        }
+        if (min_q == Double.POSITIVE_INFINITY || pattern_occs_keys_size <= 0) {
+            return 0;
+        }
+        double result = -Math.log(binomialCDF(number_of_genomes, pattern_occs_keys_size, min_q));
+        if (Double.isNaN(result)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return result;
+    }
+
     /**
      * Computes a ranking score for a given pattern
      * @param w pattern length
@@ -151,6 +202,7 @@ public class PatternScore {
     }
 
     private double q_insert(int n, int w, int k){
+        double[] q_vals = q_vals_memo.get().forInsertions(k);
         double result = 0;
         if (q_vals[w] != 0){
             result = q_vals[w];
@@ -165,6 +217,30 @@ public class PatternScore {
     }
 
 
+    /**
+     * q_insert values of one thread, computed with the same maximal number of insertions
+     */
+    private class QValsMemo {
+        double[] q_vals;
+        /**
+         * The maximal number of insertions that q_vals were computed with
+         */
+        int insertions = -1;
+
+        /**
+         * @param k maximal number of allowed insertions
+         * @return the memo of q_insert with k insertions, emptied if it was computed with other insertions
+         */
+        double[] forInsertions(int k){
+            if (k != insertions) {
+                //patterns of a parameter sweep are scored with different insertions
+                q_vals = new double[max_genome_size + 1];
+                insertions = k;
+            }
+            return q_vals;
+        }
+    }
+
     public static double divide_by_product(long val, int start, int end){
         double result = val;
         for (int i = start; i < end + 1; i++) {
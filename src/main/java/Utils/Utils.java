@@ -35,6 +35,11 @@ public class Utils {
 
     public int dataset_length_sum ;
 
+    /**
+     * Size of the largest genome (number of genes)
+     */
+    public int max_genome_size;
+
     /**
      * for each cog, a set of genomes (bac_index) in which the cog appears
      */
@@ -70,6 +75,7 @@ public class Utils {
         replicon_key_to_name = new HashMap<>();
 
         dataset_length_sum = 0;
+        max_genome_size = 0;
 
         cog_to_containing_genomes = new HashMap<>();
 
@@ -332,13 +338,13 @@ public class Utils {
                 }
 
                 dataset_length_sum = length_sum;
+                max_genome_size = max_genomes_size;
 
                 number_of_genomes = genome_key_to_name.size();
                 if (number_of_genomes == 0){
                     return -1;
                 }else{
-                    pattern_score = new PatternScore(max_genomes_size, number_of_genomes, dataset_length_sum,
-                            cog_to_containing_genomes, genome_to_cog_paralog_count);
+                    initPatternScore();
                 }
 
                 logger.writeLogger("Average genome size: " + length_sum / genome_key_to_name.size());
@@ -440,6 +446,15 @@ public class Utils {
     }
 
 
+    /**
+     * Prepares the score computation, after the dataset fields (number_of_genomes, dataset_length_sum,
+     * max_genome_size and the paralog counts) were set
+     */
+    public void initPatternScore(){
+        pattern_score = new PatternScore(max_genome_size, number_of_genomes, dataset_length_sum,
+                cog_to_containing_genomes, genome_to_cog_paralog_count);
+    }
+
     public double computePatternScore(String[] pattern_chars, int max_insertions, int max_error, int max_deletions,
                                       int pattern_occs_keys_size){
 
@@ -449,6 +464,26 @@ public class Utils {
         return -1;
     }
 
+    /**
+     * Prepares computeMaxPatternScore, see PatternScore.initScoreBound
+     */
+    public void initPatternScoreBound(int max_length, int max_insertions){
+        if (pattern_score != null){
+            pattern_score.initScoreBound(max_length, max_insertions);
+        }
+    }
+
+    /**
+     * @return an upper bound of the score of patterns of length min_length to max_length, that have an instance in at
+     * most pattern_occs_keys_size genomes, see PatternScore.maxPatternScore
+     */
+    public double computeMaxPatternScore(int min_length, int max_length, int pattern_occs_keys_size){
+        if (pattern_score != null){
+            return pattern_score.maxPatternScore(min_length, max_length, pattern_occs_keys_size);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
     public Map<String,List<Gene>> getGenomeToGeneListMap() {
         return this.genomeToGeneListMap;
     }
@@ -0,0 +1,90 @@
+package IO;
+
+import SuffixTrees.FlatSuffixTree;
+import SuffixTrees.GeneralizedSuffixTree;
+import Utils.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes a snapshot of the data tree of input/plasmid_genomes.fasta and checks that reading it gives the same tree and
+ * dataset fields
+ */
+public class DataTreeSnapshotTest {
+
+    private static final String INPUT_FILE = "input/plasmid_genomes.fasta";
+
+    @Rule
+    public TemporaryFolder temp_folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() {
+        MyLogger logger = new MyLogger(temp_folder.getRoot().getPath() + File.separator, false);
+        File input_file = new File(INPUT_FILE);
+        String snapshot_path = new File(temp_folder.getRoot(), "data_tree.snapshot").getPath();
+        for (boolean non_directons : new boolean[]{false, true}) {
+            Utils utils = new Utils(null, logger);
+            GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+            utils.readAndBuildDatasetTree(INPUT_FILE, tree, non_directons);
+            FlatSuffixTree data_tree = new FlatSuffixTree(tree);
+            assertTrue(DataTreeSnapshot.write(snapshot_path, input_file, non_directons, data_tree, utils));
+
+            Utils read_utils = new Utils(null, logger);
+            FlatSuffixTree read_tree = DataTreeSnapshot.read(snapshot_path, input_file, non_directons, read_utils);
+            assertNotNull(read_tree);
+            assertSameTree(data_tree, read_tree);
+            assertSameDataset(utils, read_utils);
+
+            //a snapshot is not used for a different input
+            assertNull(DataTreeSnapshot.read(snapshot_path, input_file, !non_directons, new Utils(null, logger)));
+            assertNull(DataTreeSnapshot.read(snapshot_path, new File("input/cog_info.txt"), non_directons,
+                    new Utils(null, logger)));
+        }
+        assertNull(DataTreeSnapshot.read(snapshot_path + ".missing", input_file, false, new Utils(null, logger)));
+    }
+
+    private static void assertSameTree(FlatSuffixTree expected, FlatSuffixTree tree) {
+        assertEquals(expected.getNumberOfNodes(), tree.getNumberOfNodes());
+        for (int v = 0; v < expected.getNumberOfNodes(); v++) {
+            assertEquals(expected.getFirstChild(v), tree.getFirstChild(v));
+            assertEquals(expected.getNumberOfChildren(v), tree.getNumberOfChildren(v));
+            assertEquals(expected.getNextSibling(v), tree.getNextSibling(v));
+            assertEquals(expected.getSuffixLink(v), tree.getSuffixLink(v));
+            assertEquals(expected.getLabelLength(v), tree.getLabelLength(v));
+            for (int i = 0; i < expected.getLabelLength(v); i++) {
+                assertEquals(expected.getLabelChar(v, i), tree.getLabelChar(v, i));
+            }
+            assertEquals(expected.getCount_by_keys(v), tree.getCount_by_keys(v));
+            assertEquals(expected.getOccurrencesFrom(v), tree.getOccurrencesFrom(v));
+            assertEquals(expected.getOccurrencesTo(v), tree.getOccurrencesTo(v));
+        }
+        int occurrences = expected.getOccurrencesTo(FlatSuffixTree.ROOT);
+        for (int i = 0; i < occurrences; i++) {
+            assertEquals(expected.getOccurrenceKey(i), tree.getOccurrenceKey(i));
+            assertEquals(expected.getOccurrenceRepliconId(i), tree.getOccurrenceRepliconId(i));
+            assertEquals(expected.getOccurrenceStartIndex(i), tree.getOccurrenceStartIndex(i));
+            assertEquals(expected.getOccurrenceStrand(i), tree.getOccurrenceStrand(i));
+        }
+    }
+
+    private static void assertSameDataset(Utils expected, Utils utils) {
+        assertEquals(expected.number_of_genomes, utils.number_of_genomes);
+        assertEquals(expected.dataset_length_sum, utils.dataset_length_sum);
+        assertEquals(expected.max_genome_size, utils.max_genome_size);
+        assertEquals(expected.index_to_char, utils.index_to_char);
+        assertEquals(expected.char_to_index, utils.char_to_index);
+        assertEquals(expected.genome_key_to_name, utils.genome_key_to_name);
+        assertEquals(expected.genome_name_to_key, utils.genome_name_to_key);
+        assertEquals(expected.replicon_key_to_name, utils.replicon_key_to_name);
+        assertEquals(expected.cog_to_containing_genomes, utils.cog_to_containing_genomes);
+        assertEquals(expected.genome_to_cog_paralog_count, utils.genome_to_cog_paralog_count);
+    }
+}
@@ -0,0 +1,142 @@
+package SuffixTrees;
+
+import IO.MyLogger;
+import Utils.Utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the building of the data tree and the lookup of its children, the numbers reported for the compact child
+ * maps (IntMap) and the allocation-free Ukkonen construction (GeneralizedSuffixTree.put):
+ * - build: time and bytes allocated by Utils.readAndBuildDatasetTree, the best of the runs
+ * - retained heap of the built GeneralizedSuffixTree
+ * - child lookup: SuffixNode.getEdge for the char of every edge of the tree, in ns per lookup
+ *
+ * Only the API that SuffixNode, Edge, GeneralizedSuffixTree and Utils had before these changes is used, so the numbers
+ * of an older commit are measured by copying this file to a checkout of it.
+ *
+ * Run from the project directory:
+ *   mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *   java -Xss64m -cp target/classes:target/test-classes:$(cat target/classpath.txt) SuffixTrees.DataTreeBenchmark \
+ *        input/plasmid_genomes.fasta [runs] [-non-directons]
+ *
+ * Allocation is measured with com.sun.management.ThreadMXBean, so it is reported as -1 on JVMs that do not have it.
+ * Timings are noisy on a busy or single-core machine, the allocation and retained heap numbers are stable.
+ */
+public class DataTreeBenchmark {
+
+    private static final int LOOKUP_ROUNDS = 20;
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: DataTreeBenchmark <input fasta> [runs] [-non-directons]");
+            System.exit(1);
+        }
+        String input_file_path = args[0];
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        boolean non_directons = args.length > 2 && "-non-directons".equals(args[2]);
+
+        //nothing is logged without debug, the log file is created in the temp directory
+        MyLogger logger = new MyLogger(System.getProperty("java.io.tmpdir") + File.separator, false);
+
+        long best_build_nanos = Long.MAX_VALUE;
+        long build_bytes = -1;
+        GeneralizedSuffixTree tree = null;
+        for (int run = 0; run < runs; run++) {
+            tree = null;
+            Utils utils = new Utils(null, logger);
+            GeneralizedSuffixTree run_tree = new GeneralizedSuffixTree();
+            long allocated_before = allocatedBytes();
+            long start = System.nanoTime();
+            utils.readAndBuildDatasetTree(input_file_path, run_tree, non_directons);
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocated_before;
+
+            best_build_nanos = Math.min(best_build_nanos, nanos);
+            if (allocated_before != -1) {
+                build_bytes = allocated;
+            }
+            tree = run_tree;
+        }
+
+        long used_with_tree = usedHeap();
+
+        //the nodes of the tree and the chars of their edges
+        List<SuffixNode> nodes = new ArrayList<>();
+        List<int[]> chars = new ArrayList<>();
+        int edges_count = 0;
+        ArrayDeque<SuffixNode> stack = new ArrayDeque<>();
+        stack.push(tree.getRoot());
+        while (!stack.isEmpty()) {
+            SuffixNode node = stack.pop();
+            Map<Integer, Edge> edges = node.getEdges();
+            int[] node_chars = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Edge> entry : edges.entrySet()) {
+                node_chars[i++] = entry.getKey();
+                stack.push(entry.getValue().getDest());
+            }
+            nodes.add(node);
+            chars.add(node_chars);
+            edges_count += node_chars.length;
+        }
+
+        long best_lookup_nanos = Long.MAX_VALUE;
+        int found = 0;
+        for (int round = 0; round < LOOKUP_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int v = 0; v < nodes.size(); v++) {
+                SuffixNode node = nodes.get(v);
+                for (int ch : chars.get(v)) {
+                    if (node.getEdge(ch) != null) {
+                        found++;
+                    }
+                }
+            }
+            best_lookup_nanos = Math.min(best_lookup_nanos, System.nanoTime() - start);
+        }
+
+        int nodes_count = nodes.size();
+        tree = null;
+        nodes = null;
+        chars = null;
+        long used_without_tree = usedHeap();
+
+        System.out.println("Nodes: " + nodes_count + ", edges: " + edges_count);
+        System.out.printf("Build (best of %d): %.1f ms, %.1f MB allocated%n", runs, best_build_nanos / 1e6,
+                build_bytes / 1e6);
+        System.out.printf("Retained GeneralizedSuffixTree: %.1f MB%n", (used_with_tree - used_without_tree) / 1e6);
+        System.out.printf("Child lookup (best of %d): %.1f ns/op (%d found)%n", LOOKUP_ROUNDS,
+                best_lookup_nanos / (double) Math.max(edges_count, 1), found / LOOKUP_ROUNDS);
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, -1 if the JVM does not measure it
+     */
+    private static long allocatedBytes(){
+        java.lang.management.ThreadMXBean thread_bean = ManagementFactory.getThreadMXBean();
+        if (thread_bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) thread_bean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return the used heap after full collections
+     */
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
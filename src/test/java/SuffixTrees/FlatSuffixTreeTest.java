@@ -0,0 +1,122 @@
+package SuffixTrees;
+
+import IO.MyLogger;
+import Utils.InstanceLocation;
+import Utils.Utils;
+import Utils.WordArray;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the count of keys that FlatSuffixTree computes for every node (countKeys) against naive counts
+ */
+public class FlatSuffixTreeTest {
+
+    private static final String INPUT_FILE = "input/plasmid_genomes.fasta";
+
+    /**
+     * The count of a node is the number of keys with a word that contains the string of the node
+     */
+    @Test
+    public void testCountByKeysOfRandomWords() {
+        Random random = new Random(1);
+        for (int test = 0; test < 200; test++) {
+            int alphabet_size = 2 + random.nextInt(4);
+            int keys_count = 1 + random.nextInt(6);
+            List<int[]> words = new ArrayList<>();
+            List<Integer> keys = new ArrayList<>();
+            GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+            int words_count = 1 + random.nextInt(10);
+            for (int i = 0; i < words_count; i++) {
+                int[] word = new int[2 + random.nextInt(10)];
+                for (int j = 0; j < word.length; j++) {
+                    word[j] = random.nextInt(alphabet_size);
+                }
+                int key = random.nextInt(keys_count);
+                words.add(word);
+                keys.add(key);
+                tree.put(new WordArray(word), key, new InstanceLocation(i, 0, 1));
+            }
+            FlatSuffixTree flat_tree = new FlatSuffixTree(tree);
+
+            List<int[]> strings = nodeStrings(flat_tree);
+            for (int v = 0; v < flat_tree.getNumberOfNodes(); v++) {
+                Set<Integer> containing_keys = new HashSet<>();
+                for (int i = 0; i < words.size(); i++) {
+                    if (contains(words.get(i), strings.get(v))) {
+                        containing_keys.add(keys.get(i));
+                    }
+                }
+                assertEquals("test " + test + ", node " + v, containing_keys.size(), flat_tree.getCount_by_keys(v));
+            }
+        }
+    }
+
+    /**
+     * The count of a node is the number of distinct keys of the occurrences of the node and of the nodes below it
+     */
+    @Test
+    public void testCountByKeysOfPlasmidGenomes() {
+        //nothing is logged without debug, the log file is created in the temp directory
+        MyLogger logger = new MyLogger(System.getProperty("java.io.tmpdir") + File.separator, false);
+        for (boolean non_directons : new boolean[]{false, true}) {
+            GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+            new Utils(null, logger).readAndBuildDatasetTree(INPUT_FILE, tree, non_directons);
+            FlatSuffixTree flat_tree = new FlatSuffixTree(tree);
+
+            for (int v = 0; v < flat_tree.getNumberOfNodes(); v++) {
+                Set<Integer> keys = new HashSet<>();
+                for (int i = flat_tree.getOccurrencesFrom(v); i < flat_tree.getOccurrencesTo(v); i++) {
+                    keys.add(flat_tree.getOccurrenceKey(i));
+                }
+                assertEquals("node " + v, keys.size(), flat_tree.getCount_by_keys(v));
+            }
+        }
+    }
+
+    /**
+     * @return the string of every node, the labels of the edges from the root to the node
+     */
+    private static List<int[]> nodeStrings(FlatSuffixTree tree) {
+        List<int[]> strings = new ArrayList<>();
+        strings.add(new int[0]);
+        //children have larger ids than their parent
+        int[] parent = new int[tree.getNumberOfNodes()];
+        for (int v = 0; v < tree.getNumberOfNodes(); v++) {
+            for (int child = tree.getFirstChild(v); child != FlatSuffixTree.NONE; child = tree.getNextSibling(child)) {
+                parent[child] = v;
+            }
+        }
+        for (int v = 1; v < tree.getNumberOfNodes(); v++) {
+            int[] parent_string = strings.get(parent[v]);
+            int[] string = new int[parent_string.length + tree.getLabelLength(v)];
+            System.arraycopy(parent_string, 0, string, 0, parent_string.length);
+            for (int i = 0; i < tree.getLabelLength(v); i++) {
+                string[parent_string.length + i] = tree.getLabelChar(v, i);
+            }
+            strings.add(string);
+        }
+        return strings;
+    }
+
+    private static boolean contains(int[] word, int[] string) {
+        for (int start = 0; start + string.length <= word.length; start++) {
+            int i = 0;
+            while (i < string.length && word[start + i] == string[i]) {
+                i++;
+            }
+            if (i == string.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
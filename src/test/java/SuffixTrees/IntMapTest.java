@@ -0,0 +1,102 @@
+package SuffixTrees;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks IntMap against a TreeMap, on small maps (entries in fields) and on maps that move their entries to arrays
+ */
+public class IntMapTest {
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        for (int test = 0; test < 500; test++) {
+            //few distinct keys keep the map small, many make it grow past the fields and the initial arrays
+            int keys_range = 1 + random.nextInt(test % 2 == 0 ? 5 : 40);
+            IntMap<String> map = new IntMap<>();
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            for (int op = 0; op < 100; op++) {
+                int key = random.nextInt(keys_range) - keys_range / 2;
+                switch (random.nextInt(4)) {
+                    case 0:
+                        assertEquals(expected.remove(key), map.remove(key));
+                        break;
+                    case 1:
+                        assertEquals(expected.get(key), map.get(key));
+                        assertEquals(expected.containsKey(key), map.containsKey(key));
+                        break;
+                    default:
+                        String value = "v" + op;
+                        assertEquals(expected.put(key, value), map.put(key, value));
+                }
+                assertSameEntries(expected, map);
+            }
+        }
+    }
+
+    @Test
+    public void testMapInterface() {
+        IntMap<String> map = new IntMap<>();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int key = 10; key > 0; key--) {
+            Integer boxed_key = key;
+            assertEquals(expected.put(boxed_key, "v" + key), map.put(boxed_key, "v" + key));
+        }
+        assertNull(map.get("1"));
+        assertFalse(map.containsKey("1"));
+        assertEquals(expected.remove((Object) 5), map.remove((Object) 5));
+        assertSameEntries(expected, map);
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        //removal and replacement through the iterator and the entries
+        Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator();
+        Iterator<Map.Entry<Integer, String>> expected_iterator = expected.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, String> entry = iterator.next();
+            Map.Entry<Integer, String> expected_entry = expected_iterator.next();
+            if (entry.getKey() % 3 == 0) {
+                iterator.remove();
+                expected_iterator.remove();
+            } else {
+                entry.setValue("w" + entry.getKey());
+                expected_entry.setValue("w" + entry.getKey());
+            }
+        }
+        assertSameEntries(expected, map);
+
+        IntMap<String> copy = new IntMap<>(map);
+        map.put(100, "v100");
+        assertSameEntries(expected, copy);
+
+        map.clear();
+        assertSameEntries(new TreeMap<Integer, String>(), map);
+    }
+
+    /**
+     * Checks the entries through keyAt and valueAt, which iterate by ascending key, and through the Map interface
+     */
+    private static void assertSameEntries(TreeMap<Integer, String> expected, IntMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertEquals(entry.getKey().intValue(), map.keyAt(i));
+            assertEquals(entry.getValue(), map.valueAt(i));
+            i++;
+        }
+        Iterator<Map.Entry<Integer, String>> iterator = map.entrySet().iterator();
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertEquals(entry, iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,77 @@
+package SuffixTrees;
+
+import Utils.InstanceLocation;
+import Utils.WordArray;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the number of genomes of unions of data tree nodes against the distinct keys of their occurrences
+ */
+public class OccurrenceSetTest {
+
+    @Test
+    public void testGenomesCountOfRandomUnions() {
+        Random random = new Random(1);
+        for (int test = 0; test < 200; test++) {
+            GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+            int words_count = 1 + random.nextInt(10);
+            for (int i = 0; i < words_count; i++) {
+                int[] word = new int[2 + random.nextInt(10)];
+                for (int j = 0; j < word.length; j++) {
+                    word[j] = random.nextInt(2 + random.nextInt(3));
+                }
+                tree.put(new WordArray(word), random.nextInt(6), new InstanceLocation(i, 0, 1));
+            }
+            FlatSuffixTree data_tree = new FlatSuffixTree(tree);
+
+            //nodes are added in any order, so the new intervals contain, are contained in, or are disjoint from the set
+            for (int set = 0; set < 10; set++) {
+                OccurrenceSet occurrences = new OccurrenceSet();
+                Set<Integer> keys = new HashSet<>();
+                assertEquals(0, occurrences.getGenomesCount());
+                int adds = 1 + random.nextInt(8);
+                for (int i = 0; i < adds; i++) {
+                    int node = random.nextInt(data_tree.getNumberOfNodes());
+                    occurrences.add(data_tree, node);
+                    for (int j = data_tree.getOccurrencesFrom(node); j < data_tree.getOccurrencesTo(node); j++) {
+                        keys.add(data_tree.getOccurrenceKey(j));
+                    }
+                    assertEquals("test " + test + ", set " + set, keys.size(), occurrences.getGenomesCount());
+                }
+            }
+        }
+    }
+
+    /**
+     * The union of the children of a node is the node, and a node that is already covered adds nothing
+     */
+    @Test
+    public void testUnionOfChildren() {
+        GeneralizedSuffixTree tree = new GeneralizedSuffixTree();
+        tree.put(new WordArray(new int[]{0, 1, 2, 0, 1}), 0, new InstanceLocation(0, 0, 1));
+        tree.put(new WordArray(new int[]{1, 2, 2, 1}), 1, new InstanceLocation(1, 0, 1));
+        tree.put(new WordArray(new int[]{2, 0, 1}), 2, new InstanceLocation(2, 0, 1));
+        FlatSuffixTree data_tree = new FlatSuffixTree(tree);
+
+        OccurrenceSet occurrences = new OccurrenceSet();
+        for (int child = data_tree.getFirstChild(FlatSuffixTree.ROOT); child != FlatSuffixTree.NONE;
+             child = data_tree.getNextSibling(child)) {
+            occurrences.add(data_tree, child);
+        }
+        assertEquals(3, occurrences.getGenomesCount());
+        occurrences.add(data_tree, FlatSuffixTree.ROOT);
+        assertEquals(3, occurrences.getGenomesCount());
+
+        OccurrenceSet single = new OccurrenceSet();
+        int child = data_tree.getChild(FlatSuffixTree.ROOT, 0);
+        single.add(data_tree, child);
+        single.add(data_tree, child);
+        assertEquals(data_tree.getCount_by_keys(child), single.getGenomesCount());
+    }
+}
@@ -0,0 +1,97 @@
+package Utils;
+
+import SuffixTrees.FlatSuffixTree;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that InstanceList keeps, of the instances that end in the same position, only the ones that are not dominated
+ */
+public class InstanceListTest {
+
+    @Test
+    public void testDominatedInstancesAreDropped() {
+        Random random = new Random(1);
+        for (int test = 0; test < 500; test++) {
+            InstanceList list = new InstanceList();
+            //records of node, edge, edge_index, error, deletions, insertions, length
+            List<int[]> expected = new ArrayList<>();
+            //the first instance has an error, so the positions of all the instances are compared
+            int adds = 1 + random.nextInt(test % 2 == 0 ? 15 : 200);
+            for (int i = 0; i < adds; i++) {
+                int node = random.nextInt(5);
+                int edge = random.nextInt(3) == 0 ? FlatSuffixTree.NONE : 10 + random.nextInt(3);
+                int edge_index = edge == FlatSuffixTree.NONE ? -1 : random.nextInt(3);
+                int[] instance = {node, edge, edge_index, i == 0 ? 1 : random.nextInt(3), random.nextInt(3),
+                        random.nextInt(3), i};
+
+                boolean added = list.add(null, instance[0], instance[1], instance[2], instance[3], instance[4],
+                        instance[5], instance[6]);
+                assertEquals(addNaive(expected, instance), added);
+                assertSameInstances(expected, list);
+            }
+        }
+    }
+
+    /**
+     * Instances with insertions only are not compared, as long as no instance with errors or deletions was added
+     */
+    @Test
+    public void testInstancesWithInsertionsOnlyAreNotCompared() {
+        InstanceList list = new InstanceList();
+        assertEquals(true, list.add(null, 1, 2, 0, 0, 0, 1, 3));
+        assertEquals(true, list.add(null, 1, 2, 0, 0, 0, 2, 4));
+        assertEquals(2, list.size());
+
+        assertEquals(false, list.add(null, 1, 2, 0, 1, 0, 1, 3));
+        assertEquals(2, list.size());
+        assertEquals(false, list.add(null, 1, 2, 0, 0, 0, 0, 2));
+        assertEquals(2, list.size());
+        assertEquals(0, list.getInsertions(0));
+        assertEquals(2, list.getLength(0));
+        assertEquals(2, list.getInsertions(1));
+    }
+
+    /**
+     * The instance replaces the first instance in its position if it dominates it, is dropped if it is dominated by it,
+     * and is appended otherwise
+     * @return true if the instance was appended
+     */
+    private static boolean addNaive(List<int[]> instances, int[] instance) {
+        for (int[] other : instances) {
+            if (other[0] != instance[0] || other[1] != instance[1] || other[2] != instance[2]) {
+                continue;
+            }
+            if (instance[3] <= other[3] && instance[4] <= other[4] && instance[5] <= other[5]) {
+                System.arraycopy(instance, 3, other, 3, 4);
+                return false;
+            }
+            if (other[3] <= instance[3] && other[4] <= instance[4] && other[5] <= instance[5]) {
+                return false;
+            }
+            break;
+        }
+        instances.add(instance.clone());
+        return true;
+    }
+
+    private static void assertSameInstances(List<int[]> expected, InstanceList list) {
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            int[] instance = expected.get(i);
+            assertEquals(instance[0], list.getNode(i));
+            assertEquals(instance[1], list.getEdge(i));
+            assertEquals(instance[2], list.getEdgeIndex(i));
+            assertEquals(instance[3], list.getError(i));
+            assertEquals(instance[4], list.getDeletions(i));
+            assertEquals(instance[5], list.getInsertions(i));
+            assertEquals(instance[6], list.getLength(i));
+            assertEquals(instance[1] != FlatSuffixTree.NONE ? instance[1] : instance[0], list.getSubtreeNode(i));
+        }
+    }
+}
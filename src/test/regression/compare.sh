@@ -0,0 +1,144 @@
+#!/bin/bash
+#
+# Compares the output of the working tree with the output of a base commit on the regression configurations, on
+# input/plasmid_genomes.fasta. The outputs are normalized before they are compared:
+# - catalog: the ID column is removed, the family ID is replaced by the smallest CSB of the family, and the lines are
+#   sorted
+# - instances: the ID is removed from the header of every CSB, the instances of every line are sorted, and the lines of
+#   every CSB and the CSBs are sorted
+# so that a change in the order of the enumeration (IDs, family IDs, order of the instances) is not reported as a
+# difference.
+#
+# Usage, from the project directory:
+#   src/test/regression/compare.sh <base commit> [arguments added to the runs of the working tree, e.g. -threads 4]
+#
+# Prints "same" or "DIFF" for every configuration, exits with 1 if a configuration differs. The normalized outputs
+# are kept in the printed work directory.
+
+if [ $# -lt 1 ]; then
+    echo "Usage: compare.sh <base commit> [arguments]"
+    exit 2
+fi
+base=$1
+shift
+
+project=$(cd "$(dirname "$0")/../../.." && pwd)
+regression=$project/src/test/regression
+work=$(mktemp -d)
+echo "Work directory: $work"
+
+configs=(
+    "a|-q 10 -ins 0"
+    "b|-q 10 -ins 1"
+    "c|-q 5 -ins 2 -qexact 2"
+    "d|-q 20 -ins 1 -non-directons"
+    "e|-q 3 -ins 1 -p patterns.txt"
+    "f|-q 10 -ins 1 -mem -cog-info cog_info.txt"
+    "g|-q 8 -ins 1 -mult-count"
+)
+
+#Main reads its input files from input/ and writes to output/ of the current directory
+mkdir -p "$work/run/input"
+ln -s "$project/input/plasmid_genomes.fasta" "$project/input/cog_info.txt" "$regression/patterns.txt" "$work/run/input/"
+
+build() {
+    local dir=$1
+    mvn -B -q -f "$dir/pom.xml" compile dependency:build-classpath -Dmdep.outputFile="$work/classpath.txt" \
+        > "$work/build.log" 2>&1 || { cat "$work/build.log"; exit 2; }
+    echo "$dir/target/classes:$(cat "$work/classpath.txt")"
+}
+
+normalize_catalog() {
+    #the CSB and family ID are the last two columns
+    LC_ALL=C awk -F'\t' '
+        NR == FNR {
+            if (FNR > 1 && (!($NF in family_csb) || $(NF - 1) < family_csb[$NF])) {
+                family_csb[$NF] = $(NF - 1)
+            }
+            next
+        }
+        FNR > 1 {
+            line = $2
+            for (i = 3; i < NF; i++) {
+                line = line "\t" $i
+            }
+            print line "\t" family_csb[$NF]
+        }' "$1" "$1" | LC_ALL=C sort
+}
+
+normalize_instances() {
+    LC_ALL=C awk -F'\t' '
+        function sort(a, n,    i, j, t) {
+            for (i = 2; i <= n; i++) {
+                t = a[i]
+                for (j = i - 1; j >= 1 && a[j] > t; j--) {
+                    a[j + 1] = a[j]
+                }
+                a[j + 1] = t
+            }
+        }
+        function flush(    i, block) {
+            if (!in_block) {
+                return
+            }
+            sort(lines, lines_count)
+            block = header
+            for (i = 1; i <= lines_count; i++) {
+                block = block "\001" lines[i]
+            }
+            print block
+            lines_count = 0
+        }
+        /^>/ {
+            flush()
+            in_block = 1
+            header = substr($0, index($0, "\t") + 1)
+            next
+        }
+        {
+            for (i = 2; i <= NF; i++) {
+                instances[i - 1] = $i
+            }
+            sort(instances, NF - 1)
+            line = $1
+            for (i = 1; i < NF; i++) {
+                line = line "\t" instances[i]
+            }
+            lines[++lines_count] = line
+        }
+        END { flush() }' "$1" | LC_ALL=C sort
+}
+
+# run <classpath> <output prefix> <arguments...>
+run() {
+    local classpath=$1 prefix=$2
+    shift 2
+    (cd "$work/run" && rm -rf output &&
+        java -Xss64m -cp "$classpath" Main.Main -in plasmid_genomes.fasta -out TXT -ds d "$@" > "$prefix.log" 2>&1) ||
+        { echo "Run failed, see $prefix.log"; exit 2; }
+    local out
+    out=$(ls -d "$work"/run/output/*/ | head -1)
+    normalize_catalog "$out"/*.txt > "$prefix.cat"
+    normalize_instances "$out"/*.fasta > "$prefix.inst"
+}
+
+git -C "$project" worktree add --detach "$work/base" "$base" > /dev/null || exit 2
+trap 'git -C "$project" worktree remove --force "$work/base"' EXIT
+base_classpath=$(build "$work/base") || exit 2
+classpath=$(build "$project") || exit 2
+
+rc=0
+for config in "${configs[@]}"; do
+    name=${config%%|*}
+    args=${config#*|}
+    run "$base_classpath" "$work/base_$name" $args
+    run "$classpath" "$work/current_$name" $args "$@"
+    if cmp -s "$work/base_$name.cat" "$work/current_$name.cat" &&
+            cmp -s "$work/base_$name.inst" "$work/current_$name.inst"; then
+        echo "$name same ($(wc -l < "$work/current_$name.cat") CSBs): $args"
+    else
+        echo "$name DIFF: $args"
+        rc=1
+    fi
+done
+exit $rc